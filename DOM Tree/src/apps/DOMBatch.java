@@ -0,0 +1,423 @@
+package apps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Scanner;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import structures.Tree;
+
+/**
+ * Applies a script of DOM operations to many HTML files. Usage:
+ * <pre>
+ *     java apps.DOMBatch input script outdir [threads]
+ * </pre>
+ * where input is either a directory, all of whose .html and .htm files are processed, or
+ * a text file with one HTML file name per line. Each output file goes into outdir under
+ * the path of its input relative to the input directory, or as written in the list, so
+ * a/index.html and b/index.html stay apart; a list entry that is absolute or climbs out
+ * with .. keeps only its file name. The run is refused, before any file is written, if
+ * two inputs would share an output or an output would replace an input. The script has
+ * one operation per line, the same ones the DOM app offers:
+ * <pre>
+ *     replace oldTag newTag
+ *     remove tag
+ *     add word tag
+ *     bold row            (row of the first table)
+ *     bold table row
+ * </pre>
+ * Blank lines and lines starting with # are skipped. Files are processed concurrently by
+ * a fixed number of worker threads (by default one per processor), and the time taken by
+ * every file is reported at the end, with the overall throughput. A file whose tree is
+ * too deep or too big to handle is reported as failed, and the others go on.
+ *
+ */
+public class DOMBatch {
+
+	/**
+	 * Stack size of a worker thread. Building and editing a tree recurses once per level
+	 * and once per sibling, so a file with tens of thousands of siblings needs far more
+	 * than the default stack.
+	 */
+	static final long WORKER_STACK = 256L << 20;
+
+	/**
+	 * One operation of the script
+	 */
+	static class Op {
+		String name;
+		String[] args;
+		int line;
+
+		Op(String name, String[] args, int line) {
+			this.name = name;
+			this.args = args;
+			this.line = line;
+		}
+
+		/**
+		 * Applies this operation to a tree
+		 *
+		 * @param tree Tree to change
+		 * @return Note about the operation for the report, or null if there is none
+		 */
+		String apply(Tree tree) {
+			if (name.equals("replace")) {
+				tree.replaceTag(args[0], args[1]);
+			} else if (name.equals("remove")) {
+				tree.removeTag(args[0]);
+			} else if (name.equals("add")) {
+				tree.addTag(args[0], args[1]);
+			} else {
+				try {
+					if (args.length == 1) {
+						tree.boldRow(Integer.parseInt(args[0]));
+					} else {
+						tree.boldRow(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+					}
+				} catch (IllegalArgumentException iae) {
+					return "line " + line + ": " + iae.getMessage();
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Outcome of processing one file
+	 */
+	static class Result {
+		long nanos;
+		long bytesIn;
+		long bytesOut;
+		String note;
+		boolean failed;
+	}
+
+	/**
+	 * Reads a script.
+	 *
+	 * @param script Script file
+	 * @return Operations, in order
+	 * @throws IOException If the script can't be read
+	 * @throws IllegalArgumentException If a line is not a known operation with the right arguments
+	 */
+	static ArrayList<Op> readScript(File script)
+	throws IOException, IllegalArgumentException {
+		ArrayList<Op> ops = new ArrayList<Op>();
+		Scanner sc = new Scanner(script);
+		try {
+			int line = 0;
+			while (sc.hasNextLine()) {
+				line++;
+				StringTokenizer st = new StringTokenizer(sc.nextLine());
+				if (!st.hasMoreTokens()) {
+					continue;
+				}
+				String name = st.nextToken().toLowerCase();
+				if (name.startsWith("#")) {
+					continue;
+				}
+				String[] args = new String[st.countTokens()];
+				for (int i=0; i < args.length; i++) {
+					args[i] = st.nextToken();
+				}
+				boolean ok;
+				if (name.equals("replace") || name.equals("add")) {
+					ok = args.length == 2;
+				} else if (name.equals("remove")) {
+					ok = args.length == 1;
+				} else if (name.equals("bold")) {
+					ok = args.length == 1 || args.length == 2;
+					for (int i=0; ok && i < args.length; i++) {
+						try {
+							ok = Integer.parseInt(args[i]) > 0;
+						} catch (NumberFormatException e) {
+							ok = false;
+						}
+					}
+				} else {
+					ok = false;
+				}
+				if (!ok) {
+					throw new IllegalArgumentException("line " + line + " of script: bad operation");
+				}
+				ops.add(new Op(name, args, line));
+			}
+		} finally {
+			sc.close();
+		}
+		return ops;
+	}
+
+	/**
+	 * Lists the files to process
+	 *
+	 * @param input Directory of HTML files, or text file with one file name per line
+	 * @return Files, in name order for a directory, in list order for a list
+	 * @throws IOException If the input can't be read
+	 */
+	static File[] listInput(File input)
+	throws IOException {
+		if (input.isDirectory()) {
+			File[] files = input.listFiles();
+			if (files == null) {
+				throw new IOException("can't list " + input);
+			}
+			ArrayList<File> html = new ArrayList<File>();
+			for (File f: files) {
+				String name = f.getName().toLowerCase();
+				if (f.isFile() && (name.endsWith(".html") || name.endsWith(".htm"))) {
+					html.add(f);
+				}
+			}
+			File[] ret = html.toArray(new File[html.size()]);
+			Arrays.sort(ret);
+			return ret;
+		}
+		ArrayList<File> list = new ArrayList<File>();
+		Scanner sc = new Scanner(input);
+		try {
+			while (sc.hasNextLine()) {
+				String name = sc.nextLine().trim();
+				if (name.length() > 0) {
+					list.add(new File(name));
+				}
+			}
+		} finally {
+			sc.close();
+		}
+		return list.toArray(new File[list.size()]);
+	}
+
+	/**
+	 * Chooses the output file of every input file
+	 *
+	 * @param input Directory of HTML files, or text file with one file name per line
+	 * @param files Files listed by listInput
+	 * @param outDir Output directory
+	 * @return Output file of every input, parallel to files
+	 * @throws IOException If a path can't be resolved
+	 * @throws IllegalArgumentException If two inputs would share an output, or an output
+	 *         would replace an input
+	 */
+	static File[] outputs(File input, File[] files, File outDir)
+	throws IOException, IllegalArgumentException {
+		File[] outs = new File[files.length];
+		HashSet<String> ins = new HashSet<String>();
+		HashSet<String> inDirs = new HashSet<String>();
+		for (File f: files) {
+			File canonical = f.getCanonicalFile();
+			ins.add(canonical.getPath());
+			if (canonical.getParentFile() != null) {
+				inDirs.add(canonical.getParent());
+			}
+		}
+		if (inDirs.contains(outDir.getCanonicalPath())) {
+			throw new IllegalArgumentException("outdir " + outDir + " holds input files, which would be replaced");
+		}
+		HashMap<String,File> taken = new HashMap<String,File>();
+		for (int i=0; i < files.length; i++) {
+			String rel = input.isDirectory() || files[i].isAbsolute() ? null : relative(files[i].getPath());
+			outs[i] = new File(outDir, rel == null ? files[i].getName() : rel);
+			String key = outs[i].getCanonicalPath();
+			if (ins.contains(key)) {
+				throw new IllegalArgumentException("output " + outs[i] + " would replace an input file");
+			}
+			File other = taken.put(key, files[i]);
+			if (other != null) {
+				throw new IllegalArgumentException(other + " and " + files[i] + " would both be written to " + outs[i]);
+			}
+		}
+		return outs;
+	}
+
+	/**
+	 * Drops . and resolves .. in a relative path
+	 *
+	 * @param path Relative path
+	 * @return Path without . and .., or null if it climbs above where it starts
+	 */
+	static String relative(String path) {
+		ArrayList<String> parts = new ArrayList<String>();
+		StringTokenizer st = new StringTokenizer(path, "/" + File.separatorChar);
+		while (st.hasMoreTokens()) {
+			String part = st.nextToken();
+			if (part.equals("..")) {
+				if (parts.isEmpty()) {
+					return null;
+				}
+				parts.remove(parts.size()-1);
+			} else if (!part.equals(".")) {
+				parts.add(part);
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String part: parts) {
+			if (sb.length() > 0) {
+				sb.append(File.separatorChar);
+			}
+			sb.append(part);
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	/**
+	 * Builds the tree of one file, applies the script and writes the result
+	 *
+	 * @param in Input file
+	 * @param out Output file; missing directories above it are made
+	 * @param ops Script
+	 * @return What happened
+	 */
+	static Result process(File in, File out, ArrayList<Op> ops) {
+		Result result = new Result();
+		long start = System.nanoTime();
+		try {
+			result.bytesIn = in.length();
+			Scanner sc = new Scanner(in);
+			Tree tree = new Tree(sc);
+			try {
+				tree.build();
+			} finally {
+				sc.close();
+			}
+			for (Op op: ops) {
+				String note = op.apply(tree);
+				if (note != null) {
+					result.note = result.note == null ? note : result.note + "; " + note;
+				}
+			}
+			File dir = out.getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+				throw new IOException("can't create " + dir);
+			}
+			FileOutputStream fos = new FileOutputStream(out);
+			try {
+				tree.writeHTML(fos.getChannel());
+			} finally {
+				fos.close();
+			}
+			result.bytesOut = out.length();
+		} catch (Throwable t) {
+			// StackOverflowError and OutOfMemoryError too: they fail this file, not the run,
+			// and the tree is garbage once we get here
+			result.failed = true;
+			result.note = t.toString();
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Processes all files on the given number of threads
+	 *
+	 * @param files Input files
+	 * @param outs Output file of every input, parallel to files
+	 * @param ops Script
+	 * @param threads Number of worker threads
+	 * @return Result of every file, parallel to files, or null where a worker died first
+	 * @throws InterruptedException If interrupted while waiting for the workers
+	 */
+	static Result[] run(final File[] files, final File[] outs, final ArrayList<Op> ops, int threads)
+	throws InterruptedException {
+		final Result[] results = new Result[files.length];
+		final AtomicInteger next = new AtomicInteger();
+		Thread[] workers = new Thread[Math.min(threads, Math.max(1, files.length))];
+		for (int w=0; w < workers.length; w++) {
+			workers[w] = new Thread(null, new Runnable() {
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < files.length) {
+						results[i] = process(files[i], outs[i], ops);
+					}
+				}
+			}, "DOMBatch-" + w, WORKER_STACK);
+			workers[w].start();
+		}
+		for (Thread worker: workers) {
+			worker.join();
+		}
+		return results;
+	}
+
+	/**
+	 * @param args input, script, outdir and optionally the number of threads
+	 */
+	public static void main(String[] args)
+	throws IOException, InterruptedException {
+		if (args.length < 3 || args.length > 4) {
+			System.err.println("Usage: java apps.DOMBatch input script outdir [threads]");
+			System.exit(1);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length == 4) {
+			try {
+				threads = Integer.parseInt(args[3]);
+			} catch (NumberFormatException e) {
+				threads = 0;
+			}
+			if (threads < 1) {
+				System.err.println("threads must be a positive integer");
+				System.exit(1);
+			}
+		}
+		ArrayList<Op> ops;
+		try {
+			ops = readScript(new File(args[1]));
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
+			System.exit(1);
+			return;
+		}
+		File input = new File(args[0]);
+		File[] files = listInput(input);
+		File outDir = new File(args[2]);
+		File[] outs;
+		try {
+			outs = outputs(input, files, outDir);
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
+			System.exit(1);
+			return;
+		}
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			throw new IOException("can't create " + outDir);
+		}
+
+		long start = System.nanoTime();
+		Result[] results = run(files, outs, ops, threads);
+		long wall = System.nanoTime() - start;
+
+		long bytesIn = 0, bytesOut = 0;
+		int failed = 0;
+		for (int i=0; i < files.length; i++) {
+			Result r = results[i];
+			if (r == null) {
+				// its worker died before finishing it
+				r = new Result();
+				r.failed = true;
+				r.note = "not processed";
+			}
+			System.out.printf("%-40s %10.3f ms %10d -> %10d bytes%s%n", files[i].getPath(),
+					r.nanos / 1e6, r.bytesIn, r.bytesOut,
+					r.note == null ? "" : (r.failed ? "  FAILED: " : "  ") + r.note);
+			if (r.failed) {
+				failed++;
+			} else {
+				bytesIn += r.bytesIn;
+				bytesOut += r.bytesOut;
+			}
+		}
+		double seconds = wall / 1e9;
+		System.out.printf("%d files (%d failed) on %d threads in %.3f s: %.1f files/s, %.2f MB/s in, %.2f MB/s out%n",
+				files.length, failed, Math.min(threads, Math.max(1, files.length)), seconds,
+				files.length / seconds, bytesIn / 1e6 / seconds, bytesOut / 1e6 / seconds);
+	}
+}
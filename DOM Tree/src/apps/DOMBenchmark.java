@@ -0,0 +1,326 @@
+package apps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import structures.Tree;
+
+/**
+ * Measures how the Tree operations scale over documents of several shapes made by
+ * HTMLGenerator. Every operation is run on every shape: first for a warmup period, so
+ * the JIT compiler has done its work, and then for a measurement period. For each pair
+ * the throughput (operations per second, counting only the time inside the operation)
+ * and the bytes allocated per operation are reported. Operations that change the tree
+ * get a freshly built tree for every run, built outside the timed part. Usage:
+ * <pre>
+ *     java apps.DOMBenchmark [-w warmupSeconds] [-m measureSeconds] [shape ...]
+ * </pre>
+ * With no shape names, all shapes are run.
+ *
+ */
+public class DOMBenchmark {
+
+	/**
+	 * A document shape, with the generator settings that make it
+	 */
+	static class Shape {
+		String name;
+		int depth, fanOut, tables, rows, cols, wordsPerLine;
+		double textDensity;
+
+		Shape(String name, int depth, int fanOut, int tables, int rows, int cols,
+				double textDensity, int wordsPerLine) {
+			this.name = name;
+			this.depth = depth;
+			this.fanOut = fanOut;
+			this.tables = tables;
+			this.rows = rows;
+			this.cols = cols;
+			this.textDensity = textDensity;
+			this.wordsPerLine = wordsPerLine;
+		}
+
+		String generate() {
+			HTMLGenerator gen = new HTMLGenerator(42);
+			gen.setDepth(depth);
+			gen.setFanOut(fanOut);
+			gen.setTables(tables, rows, cols);
+			gen.setText(textDensity, wordsPerLine);
+			return gen.generate();
+		}
+	}
+
+	static final Shape[] SHAPES = {
+		new Shape("ex", 3, 4, 1, 2, 2, 0.5, 4),
+		new Shape("deep", 14, 3, 1, 4, 4, 0.3, 4),
+		new Shape("wide", 1, 300, 4, 10, 4, 0.5, 4),
+		new Shape("tables", 2, 50, 40, 200, 8, 0.5, 4),
+		new Shape("text", 1, 60, 2, 20, 4, 0.9, 40),
+	};
+
+	/**
+	 * An operation to measure
+	 */
+	static abstract class Op {
+		String name;
+
+		/**
+		 * Whether the operation changes the tree, and so needs a new one every run
+		 */
+		boolean mutates;
+
+		Op(String name, boolean mutates) {
+			this.name = name;
+			this.mutates = mutates;
+		}
+
+		/**
+		 * Runs the operation
+		 *
+		 * @param doc The document
+		 * @param tree A tree built from the document
+		 * @return Something computed by the operation, so it can't be optimized away
+		 */
+		abstract long run(Document doc, Tree tree)
+		throws IOException;
+	}
+
+	/**
+	 * A generated document, as a string and as a file
+	 */
+	static class Document {
+		String html;
+		File file;
+	}
+
+	static final Op[] OPS = {
+		new Op("build", false) {
+			long run(Document doc, Tree tree) {
+				Tree t = new Tree(new Scanner(doc.html));
+				t.build();
+				return t.hashCode();
+			}
+		},
+		new Op("build(mapped)", false) {
+			long run(Document doc, Tree tree)
+			throws IOException {
+				Tree t = new Tree(doc.file);
+				t.build();
+				return t.hashCode();
+			}
+		},
+		new Op("replaceTag em b", true) {
+			long run(Document doc, Tree tree) {
+				tree.replaceTag("em", "b");
+				return 0;
+			}
+		},
+		new Op("removeTag p", true) {
+			long run(Document doc, Tree tree) {
+				tree.removeTag("p");
+				return 0;
+			}
+		},
+		new Op("removeTag ul", true) {
+			long run(Document doc, Tree tree) {
+				tree.removeTag("ul");
+				return 0;
+			}
+		},
+		new Op("addTag the em", true) {
+			long run(Document doc, Tree tree) {
+				tree.addTag("the", "em");
+				return 0;
+			}
+		},
+		new Op("boldRow 1", true) {
+			long run(Document doc, Tree tree) {
+				tree.boldRow(1);
+				return 0;
+			}
+		},
+		new Op("getHTML", false) {
+			long run(Document doc, Tree tree) {
+				return tree.getHTML().length();
+			}
+		},
+		new Op("writeHTML", false) {
+			long run(Document doc, Tree tree)
+			throws IOException {
+				CountingWriter out = new CountingWriter();
+				tree.writeHTML(out);
+				return out.count;
+			}
+		},
+	};
+
+	/**
+	 * Writer that only counts the characters written to it
+	 */
+	static class CountingWriter extends Writer {
+		long count;
+
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	}
+
+	/**
+	 * Results of the operations end up here, so the JIT compiler can't drop them
+	 */
+	static long sink;
+
+	/**
+	 * Thread bean that can report allocated bytes, or null if this JVM can't
+	 */
+	static com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Runs an operation on a document for about the given time
+	 *
+	 * @param op Operation
+	 * @param doc Document
+	 * @param nanos Time to run for, in nanoseconds
+	 * @return Number of runs, time inside the operation in nanoseconds, and bytes allocated
+	 *         inside the operation (-1 if not known)
+	 */
+	static long[] measure(Op op, Document doc, long nanos)
+	throws IOException {
+		long runs = 0, time = 0, bytes = 0;
+		long tid = Thread.currentThread().getId();
+		Tree tree = null;
+		long end = System.nanoTime() + nanos;
+		do {
+			if (tree == null || op.mutates) {
+				tree = new Tree(new Scanner(doc.html));
+				tree.build();
+			}
+			long before = threads == null ? 0 : threads.getThreadAllocatedBytes(tid);
+			long start = System.nanoTime();
+			sink += op.run(doc, tree);
+			time += System.nanoTime() - start;
+			bytes += threads == null ? 0 : threads.getThreadAllocatedBytes(tid) - before;
+			runs++;
+		} while (System.nanoTime() < end);
+		return new long[] { runs, time, threads == null ? -1 : bytes };
+	}
+
+	/**
+	 * Measures every operation on every shape and prints the results
+	 *
+	 * @param shapes Shapes to run
+	 * @param warmup Warmup time per operation, in seconds
+	 * @param measure Measurement time per operation, in seconds
+	 */
+	static void runAll(ArrayList<Shape> shapes, double warmup, double measure)
+	throws IOException {
+		System.out.printf("%-8s %-16s %12s %12s %14s%n", "shape", "operation", "ops/s", "ms/op", "bytes/op");
+		for (Shape shape: shapes) {
+			Document doc = new Document();
+			doc.html = shape.generate();
+			doc.file = File.createTempFile("dombench-" + shape.name, ".html");
+			doc.file.deleteOnExit();
+			Writer out = new OutputStreamWriter(new FileOutputStream(doc.file), "UTF-8");
+			try {
+				out.write(doc.html);
+			} finally {
+				out.close();
+			}
+			System.out.printf("# %s: %d bytes%n", shape.name, doc.html.length());
+
+			for (Op op: OPS) {
+				measure(op, doc, (long)(warmup * 1e9));
+				long[] r = measure(op, doc, (long)(measure * 1e9));
+				double perOp = (double)r[1] / r[0];
+				System.out.printf("%-8s %-16s %12.1f %12.4f %14s%n", shape.name, op.name,
+						1e9 / perOp, perOp / 1e6, r[2] < 0 ? "n/a" : String.valueOf(r[2] / r[0]));
+			}
+		}
+	}
+
+	/**
+	 * @param args Options and shape names
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		double warmup = 2, measure = 5;
+		ArrayList<Shape> shapes = new ArrayList<Shape>();
+		for (int i=0; i < args.length; i++) {
+			if (args[i].equals("-w") && i+1 < args.length) {
+				warmup = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-m") && i+1 < args.length) {
+				measure = Double.parseDouble(args[++i]);
+			} else {
+				boolean found = false;
+				for (Shape s: SHAPES) {
+					if (s.name.equals(args[i])) {
+						shapes.add(s);
+						found = true;
+					}
+				}
+				if (!found) {
+					System.err.println("Usage: java apps.DOMBenchmark [-w warmupSeconds] [-m measureSeconds] [shape ...]");
+					System.err.print("Shapes:");
+					for (Shape s: SHAPES) {
+						System.err.print(" " + s.name);
+					}
+					System.err.println();
+					System.exit(1);
+				}
+			}
+		}
+		if (shapes.isEmpty()) {
+			for (Shape s: SHAPES) {
+				shapes.add(s);
+			}
+		}
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			threads = (com.sun.management.ThreadMXBean)bean;
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				threads = null;
+			}
+		}
+
+		// the tree helpers recurse along sibling chains, so the wide shapes need a deep stack
+		final ArrayList<Shape> chosen = shapes;
+		final double w = warmup, m = measure;
+		final IOException[] failure = new IOException[1];
+		Thread bench = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					runAll(chosen, w, m);
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		}, "DOMBenchmark", 1L << 30);
+		bench.start();
+		try {
+			bench.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package apps;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates HTML shaped like the ex*.html inputs: every tag and every line of text on a
+ * line of its own, with paragraphs, em and b tags, nested ol and ul lists, and tables
+ * of td cells. The output depends only on the seed and the settings, so the same
+ * document can be generated again for every run of a benchmark. Usage:
+ * <pre>
+ *     java apps.HTMLGenerator seed depth fanOut tables rows cols textDensity wordsPerLine outfile
+ * </pre>
+ *
+ */
+public class HTMLGenerator {
+
+	/**
+	 * Words that make up the text, some with the punctuation addTag accepts after a word
+	 */
+	static final String[] WORDS = {
+		"the", "a", "line", "of", "text", "word", "item", "new", "paragraph.", "and",
+		"another", "sub", "which", "has", "numbered", "items", "Word,", "The", "cat", "dog?",
+		"table", "row", "cell", "first", "second", "third", "is", "in", "this", "list!"
+	};
+
+	private long seed;
+	private int depth = 3;
+	private int fanOut = 4;
+	private int tables = 1;
+	private int rows = 2;
+	private int cols = 2;
+	private double textDensity = 0.5;
+	private int wordsPerLine = 4;
+
+	private Random random;
+
+	/**
+	 * Initializes this generator with the given seed and settings close to ex1.html
+	 *
+	 * @param seed Seed of the random choices
+	 */
+	public HTMLGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the greatest nesting of blocks (paragraphs and lists) under body
+	 *
+	 * @param depth Depth, at least 1
+	 * @throws IllegalArgumentException If depth is less than 1
+	 */
+	public void setDepth(int depth)
+	throws IllegalArgumentException {
+		if (depth < 1) {
+			throw new IllegalArgumentException("depth must be at least 1");
+		}
+		this.depth = depth;
+	}
+
+	/**
+	 * Sets the number of blocks under body, and the number of items of every list
+	 *
+	 * @param fanOut Fan-out, at least 1
+	 * @throws IllegalArgumentException If fanOut is less than 1
+	 */
+	public void setFanOut(int fanOut)
+	throws IllegalArgumentException {
+		if (fanOut < 1) {
+			throw new IllegalArgumentException("fan-out must be at least 1");
+		}
+		this.fanOut = fanOut;
+	}
+
+	/**
+	 * Sets the number and size of the tables, which are spread among the blocks under body
+	 *
+	 * @param tables Number of tables, 0 or more
+	 * @param rows Rows of every table, at least 1
+	 * @param cols Cells of every row, at least 1
+	 * @throws IllegalArgumentException If a count is out of range
+	 */
+	public void setTables(int tables, int rows, int cols)
+	throws IllegalArgumentException {
+		if (tables < 0 || rows < 1 || cols < 1) {
+			throw new IllegalArgumentException("bad table size");
+		}
+		this.tables = tables;
+		this.rows = rows;
+		this.cols = cols;
+	}
+
+	/**
+	 * Sets the chance that a child of a block is a line of text rather than an element,
+	 * and the number of words in a line of text
+	 *
+	 * @param textDensity Chance of text, from 0 to 1
+	 * @param wordsPerLine Average words per line, at least 1
+	 * @throws IllegalArgumentException If a value is out of range
+	 */
+	public void setText(double textDensity, int wordsPerLine)
+	throws IllegalArgumentException {
+		if (textDensity < 0 || textDensity > 1 || wordsPerLine < 1) {
+			throw new IllegalArgumentException("bad text settings");
+		}
+		this.textDensity = textDensity;
+		this.wordsPerLine = wordsPerLine;
+	}
+
+	/**
+	 * Generates the document
+	 *
+	 * @return HTML, ending with a new line
+	 */
+	public String generate() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			generate(sb);
+		} catch (IOException e) {
+			// StringBuilder doesn't throw
+			throw new AssertionError(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the document into the given target. The same seed and settings always
+	 * give the same document.
+	 *
+	 * @param out Target
+	 * @throws IOException If the target throws an IOException
+	 */
+	public void generate(Appendable out)
+	throws IOException {
+		random = new Random(seed);
+		out.append("<html>\n<body>\n");
+		// table t goes after block (t+1)*fanOut/(tables+1), so tables are spread evenly
+		int table = 0;
+		for (int i=0; i < fanOut; i++) {
+			block(out, 1);
+			while (table < tables && (long)(table+1)*fanOut/(tables+1) == i) {
+				table(out);
+				table++;
+			}
+		}
+		while (table < tables) {
+			table(out);
+			table++;
+		}
+		out.append("</body>\n</html>\n");
+	}
+
+	/**
+	 * Writes a paragraph or a list at the given level
+	 */
+	private void block(Appendable out, int level)
+	throws IOException {
+		int kind = random.nextInt(4);
+		if (kind < 2) {
+			out.append("<p>\n");
+			children(out, level);
+			out.append("</p>\n");
+		} else {
+			String list = kind == 2 ? "ol" : "ul";
+			out.append("<").append(list).append(">\n");
+			for (int i=0; i < fanOut; i++) {
+				out.append("<li>\n");
+				children(out, level);
+				out.append("</li>\n");
+			}
+			out.append("</").append(list).append(">\n");
+		}
+	}
+
+	/**
+	 * Writes the one to three children of a paragraph or list item: text, em and b tags
+	 * around text, and, above the deepest level, nested blocks
+	 */
+	private void children(Appendable out, int level)
+	throws IOException {
+		int n = 1 + random.nextInt(3);
+		for (int i=0; i < n; i++) {
+			if (random.nextDouble() < textDensity) {
+				text(out);
+			} else if (level < depth && random.nextBoolean()) {
+				block(out, level+1);
+			} else {
+				String tag = random.nextBoolean() ? "em" : "b";
+				out.append("<").append(tag).append(">\n");
+				text(out);
+				out.append("</").append(tag).append(">\n");
+			}
+		}
+	}
+
+	private void table(Appendable out)
+	throws IOException {
+		out.append("<table>\n");
+		for (int r=1; r <= rows; r++) {
+			out.append("<tr>\n");
+			for (int c=1; c <= cols; c++) {
+				out.append("<td>\n");
+				if (random.nextInt(4) == 0) {
+					out.append("<em>\n");
+					out.append("R").append(String.valueOf(r)).append("C").append(String.valueOf(c)).append("\n");
+					out.append("</em>\n");
+				} else {
+					out.append("R").append(String.valueOf(r)).append("C").append(String.valueOf(c)).append("\n");
+				}
+				out.append("</td>\n");
+			}
+			out.append("</tr>\n");
+		}
+		out.append("</table>\n");
+	}
+
+	/**
+	 * Writes a line of text, between half and one and a half times wordsPerLine words
+	 */
+	private void text(Appendable out)
+	throws IOException {
+		int n = Math.max(1, wordsPerLine/2 + random.nextInt(wordsPerLine+1));
+		for (int i=0; i < n; i++) {
+			if (i > 0) {
+				out.append(' ');
+			}
+			out.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		out.append('\n');
+	}
+
+	/**
+	 * @param args seed, depth, fanOut, tables, rows, cols, textDensity, wordsPerLine, outfile
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length != 9) {
+			System.err.println("Usage: java apps.HTMLGenerator seed depth fanOut tables rows cols textDensity wordsPerLine outfile");
+			System.exit(1);
+		}
+		HTMLGenerator gen = new HTMLGenerator(Long.parseLong(args[0]));
+		gen.setDepth(Integer.parseInt(args[1]));
+		gen.setFanOut(Integer.parseInt(args[2]));
+		gen.setTables(Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+		gen.setText(Double.parseDouble(args[6]), Integer.parseInt(args[7]));
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[8]), "UTF-8"));
+		try {
+			gen.generate(out);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package structures;
+
+/**
+ * Undo/redo history of a document kept as persistent trees. One thread edits the document
+ * by committing new versions, while any number of threads read the current version without
+ * locking: a version never changes once it is committed. Since successive versions share
+ * all untouched subtrees, each version in the history costs only the paths its edit copied.
+ *
+ */
+public class EditHistory {
+
+	/**
+	 * Current version, read without locking
+	 */
+	private volatile PersistentTree current;
+
+	/**
+	 * Versions before the current one, most recent on top
+	 */
+	private Stack<PersistentTree> undo;
+
+	/**
+	 * Versions undone since the last commit, most recently undone on top
+	 */
+	private Stack<PersistentTree> redo;
+
+	/**
+	 * Initializes this history with an initial version
+	 * 
+	 * @param initial Initial version of the document
+	 */
+	public EditHistory(PersistentTree initial) {
+		current = initial;
+		undo = new Stack<PersistentTree>();
+		redo = new Stack<PersistentTree>();
+	}
+
+	/**
+	 * Returns the current version. It stays valid, and unchanged, for as long as the
+	 * caller holds on to it.
+	 * 
+	 * @return Current version
+	 */
+	public PersistentTree current() {
+		return current;
+	}
+
+	/**
+	 * Makes a new version current, typically the result of an edit of the current version.
+	 * Versions that were undone can no longer be redone. Committing the current version
+	 * itself (an edit that changed nothing) does nothing.
+	 * 
+	 * @param version New current version
+	 */
+	public synchronized void commit(PersistentTree version) {
+		if (version == current) {
+			return;
+		}
+		undo.push(current);
+		redo.clear();
+		current = version;
+	}
+
+	/**
+	 * Goes back to the version before the current one.
+	 * 
+	 * @return The version that is now current
+	 * @throws java.util.NoSuchElementException If there is nothing to undo
+	 */
+	public synchronized PersistentTree undo() {
+		PersistentTree previous = undo.pop();
+		redo.push(current);
+		current = previous;
+		return previous;
+	}
+
+	/**
+	 * Goes forward to the version that was last undone.
+	 * 
+	 * @return The version that is now current
+	 * @throws java.util.NoSuchElementException If there is nothing to redo
+	 */
+	public synchronized PersistentTree redo() {
+		PersistentTree next = redo.pop();
+		undo.push(current);
+		current = next;
+		return next;
+	}
+
+	/**
+	 * Tells if there is a version to go back to.
+	 * 
+	 * @return True if undo can be called, false if not
+	 */
+	public synchronized boolean canUndo() {
+		return !undo.isEmpty();
+	}
+
+	/**
+	 * Tells if there is an undone version to go forward to.
+	 * 
+	 * @return True if redo can be called, false if not
+	 */
+	public synchronized boolean canRedo() {
+		return !redo.isEmpty();
+	}
+}
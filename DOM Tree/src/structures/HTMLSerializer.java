@@ -0,0 +1,287 @@
+package structures;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Streams the HTML of a DOM tree to a writer, an output stream or a channel. The
+ * characters written are exactly those returned by Tree.getHTML, but they pass through
+ * a fixed-size buffer instead of being collected into one string, so only the buffer
+ * is held in memory no matter how large the document is. A serializer can be reused
+ * for any number of documents, but not by several threads at once.
+ *
+ */
+public class HTMLSerializer {
+
+	/**
+	 * Buffer size, in characters, used by the default constructor
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * Smallest buffer size accepted, big enough to always make progress when a
+	 * surrogate pair straddles the end of the buffer
+	 */
+	private static final int MIN_BUFFER_SIZE = 16;
+
+	/**
+	 * Characters waiting to be written or encoded
+	 */
+	private CharBuffer chars;
+
+	/**
+	 * Encoded bytes waiting to be written to the channel, allocated on first use
+	 */
+	private ByteBuffer bytes;
+
+	/**
+	 * Encoder for the charset of the last byte output, allocated on first use
+	 */
+	private CharsetEncoder encoder;
+
+	/**
+	 * Target of the document being written, if it is a character stream
+	 */
+	private Writer writer;
+
+	/**
+	 * Target of the document being written, if it is a byte channel
+	 */
+	private WritableByteChannel channel;
+
+	/**
+	 * Whether the charset of the last byte output encodes ASCII as itself, so that text
+	 * slices can be copied into the byte buffer without being encoded
+	 */
+	private boolean asciiBytes;
+
+	/**
+	 * Initializes this serializer with a buffer of DEFAULT_BUFFER_SIZE characters
+	 */
+	public HTMLSerializer() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Initializes this serializer with a buffer of the given size
+	 *
+	 * @param bufferSize Size of the buffer, in characters
+	 * @throws IllegalArgumentException If the buffer size is less than 16
+	 */
+	public HTMLSerializer(int bufferSize)
+	throws IllegalArgumentException {
+		if (bufferSize < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("buffer size must be at least " + MIN_BUFFER_SIZE);
+		}
+		chars = CharBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Writes the HTML for the tree rooted at the given node to a character stream.
+	 * The writer is neither flushed nor closed.
+	 *
+	 * @param root Root of the tree
+	 * @param out Writer to which the HTML is written
+	 * @throws IOException If the writer throws an IOException
+	 */
+	public void write(TagNode root, Writer out)
+	throws IOException {
+		writer = out;
+		try {
+			write(root);
+			drain();
+		} finally {
+			writer = null;
+			chars.clear();
+		}
+	}
+
+	/**
+	 * Writes the HTML for the tree rooted at the given node to a byte stream, encoded
+	 * in the given charset. The bytes written are those of getHTML().getBytes(charset).
+	 * The stream is neither flushed nor closed.
+	 *
+	 * @param root Root of the tree
+	 * @param out Stream to which the HTML is written
+	 * @param charset Charset used to encode the HTML
+	 * @throws IOException If the stream throws an IOException
+	 */
+	public void write(TagNode root, OutputStream out, Charset charset)
+	throws IOException {
+		write(root, Channels.newChannel(out), charset);
+	}
+
+	/**
+	 * Writes the HTML for the tree rooted at the given node to a channel, encoded
+	 * in the given charset. The bytes written are those of getHTML().getBytes(charset).
+	 * The channel is not closed.
+	 *
+	 * @param root Root of the tree
+	 * @param out Channel to which the HTML is written
+	 * @param charset Charset used to encode the HTML
+	 * @throws IOException If the channel throws an IOException
+	 */
+	public void write(TagNode root, WritableByteChannel out, Charset charset)
+	throws IOException {
+		if (encoder == null || !encoder.charset().equals(charset)) {
+			// same replacement behavior as String.getBytes
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			bytes = null;
+			String name = charset.name();
+			asciiBytes = name.equals("UTF-8") || name.equals("US-ASCII") || name.equals("ISO-8859-1");
+		}
+		if (bytes == null) {
+			bytes = ByteBuffer.allocate((int)Math.ceil(chars.capacity() * encoder.maxBytesPerChar()));
+		}
+		encoder.reset();
+		channel = out;
+		try {
+			write(root);
+			encode(true);
+			while (encoder.flush(bytes).isOverflow()) {
+				writeBytes();
+			}
+			writeBytes();
+		} finally {
+			channel = null;
+			chars.clear();
+			bytes.clear();
+		}
+	}
+
+	private void write(TagNode root)
+	throws IOException {
+		for (TagNode ptr=root; ptr != null; ptr=ptr.sibling) {
+			if (ptr.slice != null) {
+				if (channel != null && asciiBytes) {
+					copy(ptr.slice);
+				} else {
+					append(ptr.slice);
+				}
+				append("\n");
+			} else if (ptr.firstChild == null) {
+				append(ptr.tag);
+				append("\n");
+			} else if (ptr.html != null) {
+				append(ptr.html);
+			} else {
+				append("<");
+				append(ptr.tag);
+				append(">\n");
+				write(ptr.firstChild);
+				append("</");
+				append(ptr.tag);
+				append(">\n");
+			}
+		}
+	}
+
+	/**
+	 * Copies a string into the buffer, draining the buffer whenever it fills up
+	 *
+	 * @param str String to copy
+	 * @throws IOException If the target throws an IOException
+	 */
+	private void append(String str)
+	throws IOException {
+		int len = str.length();
+		for (int i=0; i < len; ) {
+			if (!chars.hasRemaining()) {
+				drain();
+			}
+			int n = Math.min(chars.remaining(), len-i);
+			chars.put(str, i, i+n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Copies the characters of a text slice into the buffer, draining the buffer whenever
+	 * it fills up
+	 *
+	 * @param text Text to copy
+	 * @throws IOException If the target throws an IOException
+	 */
+	private void append(TextSlice text)
+	throws IOException {
+		int len = text.length();
+		for (int i=0; i < len; i++) {
+			if (!chars.hasRemaining()) {
+				drain();
+			}
+			chars.put(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Copies the bytes of a text slice straight into the byte buffer, after encoding the
+	 * characters before it. A slice too big for the buffer is written to the channel as is.
+	 *
+	 * @param text Text to copy
+	 * @throws IOException If the channel throws an IOException
+	 */
+	private void copy(TextSlice text)
+	throws IOException {
+		encode(false);
+		if (chars.position() != 0) {
+			// a high surrogate is waiting for the rest of its pair, which must come first
+			append(text);
+			return;
+		}
+		ByteBuffer src = text.bytes();
+		if (src.remaining() > bytes.remaining()) {
+			writeBytes();
+			if (src.remaining() > bytes.capacity()) {
+				while (src.hasRemaining()) {
+					channel.write(src);
+				}
+				return;
+			}
+		}
+		bytes.put(src);
+	}
+
+	/**
+	 * Hands the buffered characters to the target and empties the buffer. For a channel
+	 * an unpaired high surrogate at the end of the buffer is kept for the next round.
+	 *
+	 * @throws IOException If the target throws an IOException
+	 */
+	private void drain()
+	throws IOException {
+		if (writer != null) {
+			writer.write(chars.array(), 0, chars.position());
+			chars.clear();
+		} else {
+			encode(false);
+		}
+	}
+
+	private void encode(boolean endOfInput)
+	throws IOException {
+		chars.flip();
+		while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+			writeBytes();
+		}
+		chars.compact();
+	}
+
+	private void writeBytes()
+	throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+}
@@ -0,0 +1,90 @@
+package structures;
+
+/**
+ * A reference to an element of a DOM tree, as returned by Tree.select. Besides the node
+ * it knows the handle of the parent element and the position of the element among its
+ * siblings, so edits made through the handle can update the nodes above it. A handle is
+ * good until the structure of the tree changes (by build, removeTag, an addTag or addTags
+ * that adds a tag, or a bold method); after that the tree refuses edits made through it.
+ *
+ */
+public class NodeHandle {
+
+	/**
+	 * The element
+	 */
+	final TagNode node;
+
+	/**
+	 * Handle of the parent element, or null for the root
+	 */
+	final NodeHandle parent;
+
+	/**
+	 * Position of the element among the elements under the same parent, first is 1
+	 */
+	final int position;
+
+	/**
+	 * Structure version of the tree when this handle was made
+	 */
+	final int version;
+
+	/**
+	 * Initializes this handle
+	 *
+	 * @param node The element
+	 * @param parent Handle of the parent element, or null for the root
+	 * @param position Position of the element among its element siblings, first is 1
+	 * @param version Structure version of the tree
+	 */
+	NodeHandle(TagNode node, NodeHandle parent, int position, int version) {
+		this.node = node;
+		this.parent = parent;
+		this.position = position;
+		this.version = version;
+	}
+
+	/**
+	 * Returns the tag of the element
+	 *
+	 * @return Tag, without the '<' and '>'
+	 */
+	public String getTag() {
+		return node.tag;
+	}
+
+	/**
+	 * Returns the handle of the parent element
+	 *
+	 * @return Parent handle, or null if this is the root
+	 */
+	public NodeHandle getParent() {
+		return parent;
+	}
+
+	/**
+	 * Returns the position of the element among the elements under the same parent
+	 *
+	 * @return Position, first is 1
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the element node
+	 *
+	 * @return The node
+	 */
+	public TagNode getNode() {
+		return node;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return parent == null ? "<" + node.tag + ">" : parent + " > " + "<" + node.tag + ">";
+	}
+}
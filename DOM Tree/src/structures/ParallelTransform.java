@@ -0,0 +1,224 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A transformation of the DOM tree that can be applied to any sibling chain on its own,
+ * such as the recursive helpers behind replaceTag, removeTag and addTag. When the tree
+ * has a pool, run finds the container: it walks down from the root, always into the
+ * element child with the most nodes under it, to the first node that has many children
+ * (typically body, or the biggest table or section in it). It then rewrites ranges of
+ * those children as fork/join tasks, stitches the ranges back together in order, and
+ * applies the transformation to the rest of the tree on the calling thread. The result
+ * is the same as the sequential one.
+ * <p>
+ * Finding the container sizes the whole tree, so the path to it is kept in the tree and
+ * only looked for again after the structure version changes. Edits that don't move
+ * elements, such as replaceTag, then pay nothing for it.
+ *
+ */
+abstract class ParallelTransform {
+
+	/**
+	 * Fewest children a node must have for its children to be split into tasks
+	 */
+	static final int MIN_CHILDREN = 64;
+
+	/**
+	 * Applies this transformation to a sibling chain and everything under it. The
+	 * first node of the chain must still be the first node when done, and the cached
+	 * html of every changed node must have been reset.
+	 *
+	 * @param head First node of the chain
+	 * @return True if anything in the chain changed, false if not
+	 */
+	abstract boolean apply(TagNode head);
+
+	/**
+	 * Tells if this transformation could move the given element node, or splice other
+	 * nodes in among its siblings. Children of such a node are never split up.
+	 *
+	 * @param node Element node
+	 * @return True if the node could be moved, false if not
+	 */
+	boolean moves(TagNode node) {
+		return false;
+	}
+
+	/**
+	 * Applies this transformation to the whole tree, on the pool of the tree if it has one
+	 *
+	 * @param tree Tree
+	 * @return True if anything in the tree changed, false if not
+	 */
+	boolean run(Tree tree) {
+		TagNode root = tree.root;
+		ForkJoinPool pool = tree.pool;
+		if (pool == null || root == null) {
+			return apply(root);
+		}
+		if (tree.containerVersion != tree.version) {
+			tree.container = findContainer(root);
+			tree.containerVersion = tree.version;
+		}
+		ArrayList<TagNode> path = tree.container;
+		if (path == null) {
+			return apply(root);
+		}
+		for (TagNode node: path) {
+			if (moves(node)) {
+				return apply(root);
+			}
+		}
+		TagNode container = path.get(path.size()-1);
+
+		int count = 0;
+		for (TagNode ptr=container.firstChild; ptr != null; ptr=ptr.sibling) {
+			count++;
+		}
+		TagNode[] children = new TagNode[count];
+		count = 0;
+		for (TagNode ptr=container.firstChild; ptr != null; ptr=ptr.sibling) {
+			children[count++] = ptr;
+		}
+
+		// ends[i] is set if a range ends with child i, to the last node of the rewritten range
+		TagNode[] ends = new TagNode[count];
+		boolean[] changed = new boolean[count];
+		int grain = Math.max(1, count / (pool.getParallelism()*4));
+		pool.invoke(new Range(this, children, ends, changed, 0, count, grain));
+		boolean any = false;
+		for (int i=0; i < count; i++) {
+			if (ends[i] != null && i < count-1) {
+				ends[i].sibling = children[i+1];
+			}
+			any = any || changed[i];
+		}
+		if (any) {
+			// the container and the nodes above it
+			for (TagNode node: path) {
+				node.html = null;
+			}
+		}
+
+		// everything outside the container, with an empty text node standing in for its
+		// children so they are not visited again
+		container.firstChild = new TagNode("", null, null);
+		try {
+			return apply(root) || any;
+		} finally {
+			container.firstChild = children[0];
+		}
+	}
+
+	/**
+	 * Walks down from the root, always into the element child with the most nodes under
+	 * it, to the first node with at least MIN_CHILDREN children.
+	 *
+	 * @return Nodes from the root down to that node, or null if there is none
+	 */
+	private static ArrayList<TagNode> findContainer(TagNode root) {
+		IdentityHashMap<TagNode,Integer> sizes = sizes(root);
+		ArrayList<TagNode> path = new ArrayList<TagNode>();
+		TagNode node = root;
+		while (node != null) {
+			path.add(node);
+			int count = 0;
+			TagNode heaviest = null;
+			int most = 0;
+			for (TagNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+				count++;
+				Integer size = sizes.get(ptr);
+				if (size != null && size > most) {
+					heaviest = ptr;
+					most = size;
+				}
+			}
+			if (count >= MIN_CHILDREN) {
+				return path;
+			}
+			// a subtree this small can't hold a node with MIN_CHILDREN children
+			node = most > MIN_CHILDREN ? heaviest : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Counts the nodes under every element node, itself included, without recursing, so
+	 * deep documents don't overflow the stack
+	 *
+	 * @return Size of the subtree of every node that has children
+	 */
+	private static IdentityHashMap<TagNode,Integer> sizes(TagNode root) {
+		// nodes with children, every one before its descendants
+		ArrayList<TagNode> order = new ArrayList<TagNode>();
+		ArrayList<TagNode> stack = new ArrayList<TagNode>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			TagNode node = stack.remove(stack.size()-1);
+			if (node.firstChild == null) {
+				continue;
+			}
+			order.add(node);
+			for (TagNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+				stack.add(ptr);
+			}
+		}
+		IdentityHashMap<TagNode,Integer> sizes = new IdentityHashMap<TagNode,Integer>(order.size());
+		for (int i=order.size()-1; i >= 0; i--) {
+			TagNode node = order.get(i);
+			int size = 1;
+			for (TagNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+				Integer s = sizes.get(ptr);
+				size += s == null ? 1 : s;
+			}
+			sizes.put(node, size);
+		}
+		return sizes;
+	}
+
+	/**
+	 * Task that rewrites a range of children, splitting it in halves while it is bigger
+	 * than the grain
+	 */
+	private static class Range extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private ParallelTransform op;
+		private TagNode[] children;
+		private TagNode[] ends;
+		private boolean[] changed;
+		private int lo, hi, grain;
+
+		Range(ParallelTransform op, TagNode[] children, TagNode[] ends, boolean[] changed,
+				int lo, int hi, int grain) {
+			this.op = op;
+			this.children = children;
+			this.ends = ends;
+			this.changed = changed;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi-lo > grain) {
+				int mid = (lo+hi) >>> 1;
+				invokeAll(new Range(op, children, ends, changed, lo, mid, grain),
+						new Range(op, children, ends, changed, mid, hi, grain));
+				return;
+			}
+			children[hi-1].sibling = null;
+			changed[hi-1] = op.apply(children[lo]);
+			TagNode last = children[lo];
+			while (last.sibling != null) {
+				last = last.sibling;
+			}
+			ends[hi-1] = last;
+		}
+	}
+}
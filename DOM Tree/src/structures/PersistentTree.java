@@ -0,0 +1,497 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable version of the HTML DOM tree. Every edit returns a new tree, and leaves
+ * this one as it was. The new tree copies only the nodes on the paths from the root to
+ * the changed nodes, and shares every untouched subtree with this one. A tree can
+ * therefore be read and serialized by any number of threads without locking while
+ * edits produce new versions, and keeping old versions around (for undo) costs only
+ * the paths that changed.
+ *
+ */
+public final class PersistentTree {
+
+	/**
+	 * An immutable node, with a tag or text and an array of children. A text node has no
+	 * children; an element has at least one.
+	 */
+	public static final class Node {
+
+		/**
+		 * Tag or text, as in TagNode
+		 */
+		final String tag;
+
+		/**
+		 * Children, in order. Never modified after the node is built.
+		 */
+		final Node[] children;
+
+		/**
+		 * Structural hash of this node and everything under it, 0 until computed
+		 */
+		private int hash;
+
+		/**
+		 * Initializes this node with tag/text and children
+		 *
+		 * @param tag Tag or text
+		 * @param children Children; not copied, so must not be modified afterwards
+		 */
+		Node(String tag, Node[] children) {
+			this.tag = tag;
+			this.children = children;
+		}
+
+		/**
+		 * Returns the tag of this element, or the text of this text node
+		 *
+		 * @return Tag or text
+		 */
+		public String getTag() {
+			return tag;
+		}
+
+		/**
+		 * Tells if this is a text node
+		 *
+		 * @return True if this node has no children, false if not
+		 */
+		public boolean isText() {
+			return children.length == 0;
+		}
+
+		/**
+		 * Returns the number of children of this node
+		 *
+		 * @return Number of children
+		 */
+		public int getChildCount() {
+			return children.length;
+		}
+
+		/**
+		 * Returns a child of this node
+		 *
+		 * @param i Index of the child, first child is 0
+		 * @return The child
+		 */
+		public Node getChild(int i) {
+			return children[i];
+		}
+
+		/**
+		 * Returns a node with this tag and the given children, which is this node if the
+		 * children are the ones it already has
+		 */
+		Node withChildren(Node[] kids) {
+			return kids == children ? this : new Node(tag, kids);
+		}
+
+		/**
+		 * Returns a hash of the tag or text of this node and of everything under it, so that
+		 * equal subtrees have equal hashes. It is computed on first use and kept, and since
+		 * persistent trees share subtrees, so are the hashes.
+		 */
+		int hash() {
+			int h = hash;
+			if (h == 0) {
+				h = tag.hashCode();
+				for (Node kid: children) {
+					h = 31*h + kid.hash();
+				}
+				h = 31*h + children.length;
+				if (h == 0) {
+					h = 1;
+				}
+				hash = h;
+			}
+			return h;
+		}
+
+		/**
+		 * Tells if a node has the same tag or text as this node, and the same subtree under it
+		 */
+		boolean same(Node other) {
+			if (other == this) {
+				return true;
+			}
+			if (other.children.length != children.length || other.hash() != hash()
+					|| !other.tag.equals(tag)) {
+				return false;
+			}
+			for (int i=0; i < children.length; i++) {
+				if (!children[i].same(other.children[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return isText() ? tag : "<" + tag + ">";
+		}
+	}
+
+	/**
+	 * Children of every text node
+	 */
+	static final Node[] NO_CHILDREN = new Node[0];
+
+	/**
+	 * Root node, null for an empty tree
+	 */
+	final Node root;
+
+	/**
+	 * Initializes this tree with the given root
+	 *
+	 * @param root Root node
+	 */
+	PersistentTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Builds an immutable copy of a DOM tree. The copy does not change when the DOM tree
+	 * is edited afterwards.
+	 *
+	 * @param tree DOM tree to copy
+	 */
+	public PersistentTree(Tree tree) {
+		Node[] top = copy(tree.root);
+		root = top.length == 0 ? null : top[0];
+	}
+
+	private static Node[] copy(TagNode head) {
+		int count = 0;
+		for (TagNode ptr=head; ptr != null; ptr=ptr.sibling) {
+			count++;
+		}
+		if (count == 0) {
+			return NO_CHILDREN;
+		}
+		Node[] nodes = new Node[count];
+		count = 0;
+		for (TagNode ptr=head; ptr != null; ptr=ptr.sibling) {
+			nodes[count++] = new Node(ptr.text().toString(), copy(ptr.firstChild));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the root node of this tree
+	 *
+	 * @return Root node, or null if the tree is empty
+	 */
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Builds a mutable DOM tree with the same content as this tree.
+	 *
+	 * @return New DOM tree
+	 */
+	public Tree toTree() {
+		return new Tree(root == null ? null : toTagNode(root, null));
+	}
+
+	private static TagNode toTagNode(Node node, TagNode sibling) {
+		TagNode first = null;
+		for (int i=node.children.length-1; i >= 0; i--) {
+			first = toTagNode(node.children[i], first);
+		}
+		return new TagNode(node.tag, first, sibling);
+	}
+
+	/**
+	 * Returns a tree in which all occurrences of an old tag are replaced with a new tag.
+	 * Only the same replacements as Tree.replaceTag are made (between em, b and p, and
+	 * between ol and ul); for any other pair, this tree is returned.
+	 *
+	 * @param oldTag Old tag
+	 * @param newTag Replacement tag
+	 * @return Edited tree, or this tree if nothing changed
+	 */
+	public PersistentTree replaceTag(String oldTag, String newTag) {
+		boolean possible = false;
+		if((oldTag.equals("em") || oldTag.equals("b") || oldTag.equals("p"))
+				&& (newTag.equals("em") || newTag.equals("b") || newTag.equals("p"))) {
+			possible = !oldTag.equals(newTag);
+		} else if((oldTag.equals("ol") && newTag.equals("ul"))||(oldTag.equals("ul") && newTag.equals("ol"))){
+			possible = true;
+		}
+		if (!possible || root == null) {
+			return this;
+		}
+		return with(replace(root, oldTag, newTag));
+	}
+
+	private static Node replace(Node node, String oldTag, String newTag) {
+		if (node.isText()) {
+			return node;
+		}
+		Node[] kids = node.children;
+		for (int i=0; i < node.children.length; i++) {
+			Node kid = replace(node.children[i], oldTag, newTag);
+			if (kid != node.children[i]) {
+				if (kids == node.children) {
+					kids = node.children.clone();
+				}
+				kids[i] = kid;
+			}
+		}
+		if (node.tag.equals(oldTag)) {
+			return new Node(newTag, kids);
+		}
+		return node.withChildren(kids);
+	}
+
+	/**
+	 * Returns a tree from which all occurrences of a tag are removed, with the same results
+	 * as Tree.removeTag: the children of a removed p, em or b take its place, and the
+	 * children of a removed ol or ul take its place as p tags.
+	 *
+	 * @param tag Tag to be removed, can be p, em, b, ol, or ul
+	 * @return Edited tree, or this tree if nothing changed
+	 */
+	public PersistentTree removeTag(String tag) {
+		boolean list;
+		if(tag.equals("p") || tag.equals("em") || tag.equals("b")) {
+			list = false;
+		} else if(tag.equals("ol") || tag.equals("ul")) {
+			list = true;
+		} else {
+			return this;
+		}
+		if (root == null || root.isText()) {
+			return this;
+		}
+		// the root itself is kept, so the result is still a single tree
+		return with(root.withChildren(remove(root.children, tag, list)));
+	}
+
+	private static Node[] remove(Node[] chain, String tag, boolean list) {
+		if (chain.length == 0) {
+			return chain;
+		}
+		ArrayList<Node> out = new ArrayList<Node>(chain.length);
+		boolean changed = remove(chain, 0, tag, list, out);
+		for (int i=0; !changed && i < chain.length; i++) {
+			changed = out.get(i) != chain[i];
+		}
+		return changed ? out.toArray(new Node[out.size()]) : chain;
+	}
+
+	/**
+	 * Appends the result of removing the tag from chain[from..] to out. As in removetag1,
+	 * the first child of a removed p, em or b takes its place without being checked again,
+	 * and the remaining children are checked like any other sibling.
+	 *
+	 * @return True if some node was removed from the chain itself
+	 */
+	private static boolean remove(Node[] chain, int from, String tag, boolean list, ArrayList<Node> out) {
+		boolean removed = false;
+		for (int i=from; i < chain.length; i++) {
+			Node node = chain[i];
+			if (node.isText() || !node.tag.equals(tag)) {
+				out.add(node.withChildren(remove(node.children, tag, list)));
+			} else if (list) {
+				for (Node kid: node.children) {
+					out.add(new Node("p", remove(kid.children, tag, list)));
+				}
+				removed = true;
+			} else {
+				Node first = node.children[0];
+				out.add(first.withChildren(remove(first.children, tag, list)));
+				remove(node.children, 1, tag, list, out);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns a tree in which a tag is added around all occurrences of a word. Occurrences
+	 * are found, and text is split around them, as by Tree.addTags.
+	 *
+	 * @param word Word around which tag is to be added
+	 * @param tag Tag to be added, em or b
+	 * @return Edited tree, or this tree if nothing changed
+	 */
+	public PersistentTree addTag(String word, String tag) {
+		HashMap<String,String> wordToTag = new HashMap<String,String>();
+		wordToTag.put(word, tag);
+		return addTags(wordToTag);
+	}
+
+	/**
+	 * Returns a tree in which tags are added around all occurrences of several words, as
+	 * by Tree.addTags. Entries whose tag is neither em nor b are ignored.
+	 *
+	 * @param wordToTag Map from each word to the tag to be added around it
+	 * @return Edited tree, or this tree if nothing changed
+	 */
+	public PersistentTree addTags(Map<String,String> wordToTag) {
+		HashMap<String,String> targets = new HashMap<String,String>();
+		for (Map.Entry<String,String> entry: wordToTag.entrySet()) {
+			if (entry.getValue().equals("em") || entry.getValue().equals("b")) {
+				targets.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (targets.isEmpty() || root == null || root.isText()) {
+			return this;
+		}
+		return with(root.withChildren(add(root.children, new WordMatcher(targets))));
+	}
+
+	private static Node[] add(Node[] chain, WordMatcher matcher) {
+		ArrayList<Node> out = null;
+		for (int i=0; i < chain.length; i++) {
+			Node node = chain[i];
+			int[] pieces = node.isText() ? matcher.split(node.tag) : null;
+			if (pieces == null || pieces.length == 0) {
+				Node kept = node.isText() ? node : node.withChildren(add(node.children, matcher));
+				if (out != null) {
+					out.add(kept);
+				} else if (kept != node) {
+					out = start(chain, i);
+					out.add(kept);
+				}
+				continue;
+			}
+			if (out == null) {
+				out = start(chain, i);
+			}
+			for (int p=0; p < pieces.length; p+=3) {
+				Node piece = new Node(node.tag.substring(pieces[p], pieces[p+1]), NO_CHILDREN);
+				if (pieces[p+2] >= 0) {
+					piece = new Node(matcher.tag(pieces[p+2]), new Node[] { piece });
+				}
+				out.add(piece);
+			}
+		}
+		return out == null ? chain : out.toArray(new Node[out.size()]);
+	}
+
+	/**
+	 * Returns a list holding the first count nodes of a chain
+	 */
+	private static ArrayList<Node> start(Node[] chain, int count) {
+		ArrayList<Node> out = new ArrayList<Node>(chain.length+4);
+		for (int i=0; i < count; i++) {
+			out.add(chain[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * Returns a tree in which every column of the given row of the first table (in document
+	 * order) is boldfaced, with a b tag directly under each td tag of the row.
+	 *
+	 * @param row Row to bold, first row is numbered 1 (not 0)
+	 * @return Edited tree
+	 * @throws IllegalArgumentException If there is no table, or the table does not have the row
+	 */
+	public PersistentTree boldRow(int row)
+	throws IllegalArgumentException {
+		Node bolded = root == null ? null : boldRow(root, row);
+		if (bolded == null) {
+			throw new IllegalArgumentException("table does not have row " + row);
+		}
+		return with(bolded);
+	}
+
+	/**
+	 * Returns a copy of the subtree with the row bolded in its first table, or null if
+	 * it has no table
+	 */
+	private static Node boldRow(Node node, int row) {
+		if (node.isText()) {
+			return null;
+		}
+		if (node.tag.equals("table")) {
+			// rows and cells are element children only, as in Table, so text directly
+			// under table or tr is neither counted nor bolded
+			int r = elementIndex(node, row);
+			if (r < 0) {
+				throw new IllegalArgumentException("table does not have row " + row);
+			}
+			Node tr = node.children[r];
+			Node[] cells = tr.children.clone();
+			for (int i=0; i < cells.length; i++) {
+				Node td = cells[i];
+				if (!td.isText()) {
+					cells[i] = new Node(td.tag, new Node[] { new Node("b", td.children) });
+				}
+			}
+			Node[] rows = node.children.clone();
+			rows[r] = new Node(tr.tag, cells);
+			return new Node(node.tag, rows);
+		}
+		for (int i=0; i < node.children.length; i++) {
+			Node kid = boldRow(node.children[i], row);
+			if (kid != null) {
+				Node[] kids = node.children.clone();
+				kids[i] = kid;
+				return new Node(node.tag, kids);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index among all children of a node of its n-th element child, counting
+	 * from 1, or -1 if it has fewer element children
+	 */
+	private static int elementIndex(Node node, int n) {
+		for (int i=0; i < node.children.length && n >= 1; i++) {
+			if (!node.children[i].isText() && --n == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private PersistentTree with(Node newRoot) {
+		return newRoot == root ? this : new PersistentTree(newRoot);
+	}
+
+	/**
+	 * Gets the HTML represented by this tree, in the same form as Tree.getHTML.
+	 *
+	 * @return HTML string, including new lines.
+	 */
+	public String getHTML() {
+		StringBuilder sb = new StringBuilder();
+		if (root != null) {
+			getHTML(root, sb);
+		}
+		return sb.toString();
+	}
+
+	private static void getHTML(Node node, StringBuilder sb) {
+		if (node.isText()) {
+			sb.append(node.tag);
+			sb.append("\n");
+			return;
+		}
+		sb.append("<");
+		sb.append(node.tag);
+		sb.append(">\n");
+		for (Node kid: node.children) {
+			getHTML(kid, sb);
+		}
+		sb.append("</");
+		sb.append(node.tag);
+		sb.append(">\n");
+	}
+}
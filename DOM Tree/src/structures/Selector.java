@@ -0,0 +1,279 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A compiled CSS selector over the DOM tree. The supported syntax is a sequence of steps
+ * joined by descendant (space) or child (&gt;) combinators, where each step is a tag name
+ * or *, optionally followed by :nth-child(...) with an argument of the form an+b, odd,
+ * even or a plain number. Examples: "table tr:nth-child(2) > td", "body > p em".
+ * Text nodes are never matched, and nth-child counts element siblings only.
+ * <p>
+ * The steps are compiled into a small automaton whose state is the set of steps that
+ * the next node may match. Evaluation is a single pass over the tree that carries this
+ * state down from parent to children, so it costs one visit per element no matter how
+ * many steps there are. Selectors whose last step names a tag can instead be answered
+ * from a tag index, checking only the elements with that tag.
+ *
+ */
+public class Selector {
+
+	/**
+	 * Tag of every step, null for *
+	 */
+	private String[] tags;
+
+	/**
+	 * nth-child coefficient a of every step, in an+b
+	 */
+	private int[] a;
+
+	/**
+	 * nth-child offset b of every step, in an+b; 0 with a = 1 for steps without nth-child
+	 */
+	private int[] b;
+
+	/**
+	 * Steps that may be matched by any descendant of a match of the step before them, as
+	 * opposed to only by its children. The first step is always one of these.
+	 */
+	private long descendant;
+
+	/**
+	 * The text this selector was compiled from
+	 */
+	private String text;
+
+	private Selector() {
+	}
+
+	/**
+	 * Compiles a selector.
+	 *
+	 * @param selector Selector text
+	 * @return Compiled selector
+	 * @throws IllegalArgumentException If the selector is empty, has more than 63 steps, or
+	 *         is not in the supported syntax
+	 */
+	public static Selector compile(String selector)
+	throws IllegalArgumentException {
+		ArrayList<String> steps = new ArrayList<String>();
+		ArrayList<Boolean> children = new ArrayList<Boolean>();
+		boolean child = false;
+		int i = 0, len = selector.length();
+		while (i < len) {
+			char c = selector.charAt(i);
+			if (c == ' ' || c == '\t') {
+				i++;
+			} else if (c == '>') {
+				if (child || steps.isEmpty()) {
+					throw new IllegalArgumentException("misplaced '>' in selector: " + selector);
+				}
+				child = true;
+				i++;
+			} else {
+				int start = i;
+				int depth = 0;
+				while (i < len) {
+					c = selector.charAt(i);
+					if (c == '(') {
+						depth++;
+					} else if (c == ')') {
+						depth--;
+					} else if (depth == 0 && (c == ' ' || c == '\t' || c == '>')) {
+						break;
+					}
+					i++;
+				}
+				steps.add(selector.substring(start, i));
+				children.add(child);
+				child = false;
+			}
+		}
+		if (steps.isEmpty() || child) {
+			throw new IllegalArgumentException("incomplete selector: " + selector);
+		}
+		if (steps.size() > 63) {
+			throw new IllegalArgumentException("selector has more than 63 steps: " + selector);
+		}
+
+		Selector sel = new Selector();
+		int k = steps.size();
+		sel.text = selector;
+		sel.tags = new String[k];
+		sel.a = new int[k];
+		sel.b = new int[k];
+		for (int s=0; s < k; s++) {
+			String step = steps.get(s);
+			String tag = step;
+			sel.a[s] = 1;
+			sel.b[s] = 0;
+			int colon = step.indexOf(':');
+			if (colon >= 0) {
+				tag = step.substring(0, colon);
+				String pseudo = step.substring(colon);
+				if (!pseudo.startsWith(":nth-child(") || !pseudo.endsWith(")")) {
+					throw new IllegalArgumentException("unsupported selector step: " + step);
+				}
+				parseNth(pseudo.substring(11, pseudo.length()-1).replace(" ", ""), sel, s);
+			}
+			if (tag.length() == 0 || tag.indexOf('(') >= 0 || tag.indexOf(')') >= 0) {
+				throw new IllegalArgumentException("unsupported selector step: " + step);
+			}
+			sel.tags[s] = tag.equals("*") ? null : tag;
+			if (s == 0 || !children.get(s)) {
+				sel.descendant |= 1L << s;
+			}
+		}
+		return sel;
+	}
+
+	/**
+	 * Parses the argument of :nth-child into the coefficients of step s
+	 */
+	private static void parseNth(String arg, Selector sel, int s) {
+		try {
+			if (arg.equals("odd")) {
+				sel.a[s] = 2;
+				sel.b[s] = 1;
+			} else if (arg.equals("even")) {
+				sel.a[s] = 2;
+				sel.b[s] = 0;
+			} else if (arg.indexOf('n') < 0) {
+				sel.a[s] = 0;
+				sel.b[s] = Integer.parseInt(arg);
+			} else {
+				int n = arg.indexOf('n');
+				String coef = arg.substring(0, n);
+				sel.a[s] = coef.equals("") || coef.equals("+") ? 1 : coef.equals("-") ? -1 : Integer.parseInt(coef);
+				String off = arg.substring(n+1);
+				sel.b[s] = off.equals("") ? 0 : Integer.parseInt(off.startsWith("+") ? off.substring(1) : off);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad :nth-child argument: " + arg);
+		}
+	}
+
+	/**
+	 * Returns the tag of the last step, which every match has
+	 *
+	 * @return Tag, or null if the last step is *
+	 */
+	String lastTag() {
+		return tags[tags.length-1];
+	}
+
+	/**
+	 * Tells if an element matches step s on its own, without looking at its ancestors
+	 */
+	private boolean matches(int s, TagNode node, int position) {
+		if (tags[s] != null && !tags[s].equals(node.tag)) {
+			return false;
+		}
+		if (a[s] == 0) {
+			return position == b[s];
+		}
+		int diff = position - b[s];
+		return diff % a[s] == 0 && diff / a[s] >= 0;
+	}
+
+	/**
+	 * Finds all matching elements in one pass over the tree.
+	 *
+	 * @param root Root of the tree
+	 * @param version Structure version of the tree, for the handles
+	 * @param index If not null, filled with a handle for every element, by tag
+	 * @return Handles of the matching elements, in document order
+	 */
+	ArrayList<NodeHandle> scan(TagNode root, int version, HashMap<String,ArrayList<NodeHandle>> index) {
+		ArrayList<NodeHandle> found = new ArrayList<NodeHandle>();
+		scan(root, null, 1L, version, index, found);
+		return found;
+	}
+
+	/**
+	 * Visits a sibling chain, where active is the set of steps the elements in it may match
+	 */
+	private void scan(TagNode head, NodeHandle parent, long active, int version,
+			HashMap<String,ArrayList<NodeHandle>> index, ArrayList<NodeHandle> found) {
+		int k = tags.length;
+		long last = 1L << (k-1);
+		int position = 0;
+		for (TagNode ptr=head; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild == null) {
+				continue;
+			}
+			position++;
+			NodeHandle handle = new NodeHandle(ptr, parent, position, version);
+			if (index != null) {
+				ArrayList<NodeHandle> list = index.get(ptr.tag);
+				if (list == null) {
+					list = new ArrayList<NodeHandle>();
+					index.put(ptr.tag, list);
+				}
+				list.add(handle);
+			}
+
+			long matched = 0;
+			for (long bits=active; bits != 0; bits &= bits-1) {
+				int s = Long.numberOfTrailingZeros(bits);
+				if (matches(s, ptr, position)) {
+					matched |= 1L << s;
+				}
+			}
+			if ((matched & last) != 0) {
+				found.add(handle);
+			}
+			long next = ((matched & ~last) << 1) | (active & descendant);
+			if (next != 0 || index != null) {
+				scan(ptr.firstChild, handle, next, version, index, found);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the candidates (all elements with the tag of the last step, in document order)
+	 * that match the whole selector, checking the steps before the last against their
+	 * ancestors.
+	 *
+	 * @param candidates Handles of the candidate elements
+	 * @return Handles of the matching elements, in document order
+	 */
+	ArrayList<NodeHandle> filter(ArrayList<NodeHandle> candidates) {
+		ArrayList<NodeHandle> found = new ArrayList<NodeHandle>();
+		int last = tags.length-1;
+		for (NodeHandle handle: candidates) {
+			if (matches(last, handle.node, handle.position) && matchesAbove(handle, last)) {
+				found.add(handle);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Tells if the steps before step s match ancestors of an element that matches step s
+	 */
+	private boolean matchesAbove(NodeHandle handle, int s) {
+		if (s == 0) {
+			return true;
+		}
+		for (NodeHandle up=handle.parent; up != null; up=up.parent) {
+			if (matches(s-1, up.node, up.position) && matchesAbove(up, s-1)) {
+				return true;
+			}
+			if ((descendant & (1L << s)) == 0) {
+				// child combinator: only the parent may match
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,104 @@
+package structures;
+
+import java.util.ArrayList;
+
+/**
+ * Index entry for one table of a DOM tree: the table node, the nodes above it, and its
+ * rows and cells in arrays, so that a row or a cell can be reached in constant time.
+ * Rows are the element children of the table, and cells are the element children of a row.
+ *
+ */
+class Table {
+
+	/**
+	 * The table node
+	 */
+	final TagNode table;
+
+	/**
+	 * Nodes from the root of the tree down to the parent of the table
+	 */
+	final TagNode[] path;
+
+	/**
+	 * Row nodes, in order
+	 */
+	final TagNode[] rows;
+
+	/**
+	 * Cell nodes of every row, in order
+	 */
+	final TagNode[][] cells;
+
+	/**
+	 * Initializes this entry, collecting the rows and cells of the table
+	 *
+	 * @param table The table node
+	 * @param path Nodes from the root down to the parent of the table
+	 */
+	Table(TagNode table, TagNode[] path) {
+		this.table = table;
+		this.path = path;
+		rows = elements(table);
+		cells = new TagNode[rows.length][];
+		for (int r=0; r < rows.length; r++) {
+			cells[r] = elements(rows[r]);
+		}
+	}
+
+	/**
+	 * Resets the cached html of the table and of every node above it
+	 */
+	void invalidate() {
+		table.html = null;
+		for (TagNode node: path) {
+			node.html = null;
+		}
+	}
+
+	/**
+	 * Finds all tables in a tree, nested ones included.
+	 *
+	 * @param root Root of the tree
+	 * @return Tables in document order
+	 */
+	static ArrayList<Table> index(TagNode root) {
+		ArrayList<Table> tables = new ArrayList<Table>();
+		index(root, new ArrayList<TagNode>(), tables);
+		return tables;
+	}
+
+	private static void index(TagNode head, ArrayList<TagNode> path, ArrayList<Table> tables) {
+		for (TagNode ptr=head; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild == null) {
+				continue;
+			}
+			if (ptr.tag.equals("table")) {
+				tables.add(new Table(ptr, path.toArray(new TagNode[path.size()])));
+			}
+			path.add(ptr);
+			index(ptr.firstChild, path, tables);
+			path.remove(path.size()-1);
+		}
+	}
+
+	/**
+	 * Returns the element children of a node
+	 */
+	private static TagNode[] elements(TagNode node) {
+		int count = 0;
+		for (TagNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild != null) {
+				count++;
+			}
+		}
+		TagNode[] ret = new TagNode[count];
+		count = 0;
+		for (TagNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild != null) {
+				ret[count++] = ptr;
+			}
+		}
+		return ret;
+	}
+}
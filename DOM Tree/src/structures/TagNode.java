@@ -10,10 +10,17 @@ public class TagNode {
 	/**
 	 * Tag or text. If tag, only the tag name is stored,
 	 * but NOT the '<' or '>'. For example, if the tag
-	 * is "<em>", then only "em" is stored.
+	 * is "<em>", then only "em" is stored. Null for text
+	 * that is kept as a slice of the input.
 	 */
 	String tag;
 	
+	/**
+	 * Text of this node as a slice of the input buffer, or null if the text is in tag.
+	 * Anything that changes the text puts it in tag and sets this to null.
+	 */
+	TextSlice slice;
+	
 	/**
 	 * First child of this node
 	 */
@@ -24,6 +31,12 @@ public class TagNode {
 	 */
 	TagNode sibling;
 	
+	/**
+	 * HTML of this node and everything under it (but not its siblings), kept when fragment
+	 * caching is on. It is reset to null whenever the node or anything under it changes.
+	 */
+	String html;
+	
 	/**
 	 * Initializes this tag node with tag/txt, first child, and sibling
 	 * 
@@ -37,6 +50,24 @@ public class TagNode {
 		this.sibling = sibling;
 	}
 	
+	/**
+	 * Initializes this tag node as a text node whose text is a slice of the input
+	 * 
+	 * @param slice Text
+	 */
+	TagNode(TextSlice slice) {
+		this.slice = slice;
+	}
+	
+	/**
+	 * Returns the tag or text of this node, without making a String of a slice
+	 * 
+	 * @return Tag or text
+	 */
+	CharSequence text() {
+		return slice != null ? slice : tag;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -44,7 +75,7 @@ public class TagNode {
 		if (firstChild != null) {
 			return "<" + tag + ">";
 		} else {
-			return tag;
+			return text().toString();
 		}
 	}
 }
@@ -0,0 +1,130 @@
+package structures;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A line of text that stays in the buffer it was read from, usually a memory-mapped input
+ * file, instead of being copied into a String. Only lines made of ASCII characters are kept
+ * this way, so each byte is one character and the bytes are the same in UTF-8, ISO-8859-1
+ * and US-ASCII. A slice never changes; reading it from several threads at once is safe.
+ *
+ */
+final class TextSlice implements CharSequence {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * Buffer holding the text, shared by all slices of the same input
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Index of the first byte of the text in the buffer
+	 */
+	private final int offset;
+
+	/**
+	 * Number of bytes (and characters) in the text
+	 */
+	private final int length;
+
+	/**
+	 * Initializes this slice
+	 *
+	 * @param buffer Buffer holding the text, which must all be ASCII
+	 * @param offset Index of the first byte of the text
+	 * @param length Number of bytes in the text
+	 */
+	TextSlice(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Tells if a range of a buffer is all ASCII, so it can be kept as a slice
+	 *
+	 * @param buffer Buffer
+	 * @param from Index of the first byte
+	 * @param to Index after the last byte
+	 * @return True if no byte has its high bit set, false otherwise
+	 */
+	static boolean isASCII(ByteBuffer buffer, int from, int to) {
+		for (int i=from; i < to; i++) {
+			if (buffer.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.CharSequence#length()
+	 */
+	public int length() {
+		return length;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		return (char)buffer.get(offset+index);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		}
+		return new TextSlice(buffer, offset+start, end-start);
+	}
+
+	/**
+	 * Tells if the text contains a lower case string, ignoring the case of the text
+	 *
+	 * @param lower String to look for, in lower case
+	 * @return True if the text contains the string, false if not
+	 */
+	boolean containsLowerCase(String lower) {
+		int n = lower.length();
+		for (int i=0; i+n <= length; i++) {
+			int j = 0;
+			while (j < n && Character.toLowerCase((char)buffer.get(offset+i+j)) == lower.charAt(j)) {
+				j++;
+			}
+			if (j == n) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a view of the bytes of the text, positioned at its first byte and limited
+	 * after its last. The view shares the bytes but not the position of the buffer.
+	 *
+	 * @return View of the bytes
+	 */
+	ByteBuffer bytes() {
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset+length);
+		view.position(offset);
+		return view;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		byte[] b = new byte[length];
+		bytes().get(b);
+		return new String(b, ASCII);
+	}
+}
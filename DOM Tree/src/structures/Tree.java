@@ -1,6 +1,16 @@
 package structures;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class implements an HTML DOM Tree. Each node of the tree is a TagNode, with fields for
@@ -19,6 +29,58 @@ public class Tree {
 	 */
 	Scanner sc;
 	
+	/**
+	 * Input HTML file mapped into memory, when the tree is built from a file with text
+	 * nodes kept as slices of it
+	 */
+	ByteBuffer input;
+	
+	/**
+	 * Serializer used by the writeHTML methods, created on first use and reused after that
+	 */
+	HTMLSerializer serializer;
+	
+	/**
+	 * Pool on which replaceTag, removeTag, addTag and addTags split their work, or null
+	 * if they run sequentially
+	 */
+	ForkJoinPool pool;
+	
+	/**
+	 * Whether getHTML keeps the html of every element in its TagNode, so that only the
+	 * parts of the tree that changed since the last call are serialized again
+	 */
+	boolean caching;
+	
+	/**
+	 * Structure version, incremented by every edit that can move or add elements, and so
+	 * change the parents or positions recorded in node handles
+	 */
+	int version;
+	
+	/**
+	 * Nodes from the root down to the node whose children parallel edits split up, as
+	 * found by ParallelTransform for structure version containerVersion, or null if there
+	 * is no such node
+	 */
+	ArrayList<TagNode> container;
+	
+	/**
+	 * Structure version container was found for, or -1 if it was never looked for
+	 */
+	int containerVersion = -1;
+	
+	/**
+	 * Handles of all elements by tag, built by the first select after an edit, or null
+	 */
+	HashMap<String,ArrayList<NodeHandle>> tagIndex;
+	
+	/**
+	 * Rows and cells of all tables, in document order, built by build and rebuilt on
+	 * first use after an edit that can move elements, or null
+	 */
+	ArrayList<Table> tables;
+	
 	/**
 	 * Initializes this tree object with scanner for input HTML file
 	 * 
@@ -29,11 +91,50 @@ public class Tree {
 		root = null;
 	}
 	
+	/**
+	 * Initializes this tree object with an input HTML file, which is mapped into memory.
+	 * When the tree is built, lines of ASCII text are not copied into Strings: their text
+	 * nodes refer to the mapped bytes, and a String is made only if the text is changed
+	 * (for instance, split by addTag). The file is read as UTF-8.
+	 * 
+	 * @param file Input HTML file
+	 * @throws IOException If the file can't be mapped
+	 */
+	public Tree(File file) 
+	throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map");
+			}
+			input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Initializes this tree object with an already built DOM tree
+	 * 
+	 * @param root Root node
+	 */
+	Tree(TagNode root) {
+		this.root = root;
+	}
+	
 	/**
 	 * Builds the DOM tree from input HTML file. The root of the 
 	 * tree is stored in the root field.
 	 */
 	public void build() {
+		version++;
+		tagIndex = null;
+		if (input != null) {
+			buildSlices();
+			tables = Table.index(root);
+			return;
+		}
 		Stack<TagNode> tags = new Stack<TagNode>();
 		sc.nextLine();
 		root = new TagNode("html", null, null);
@@ -64,19 +165,147 @@ public class Tree {
 			}
 			if(isTag) tags.push(temp);
 		}
+		tables = Table.index(root);
+	}
+	
+	/**
+	 * Builds the DOM tree from the mapped input file, keeping lines of ASCII text as slices
+	 * of it. The tree is the same as the one built from a scanner over the file, except that
+	 * an empty line becomes an empty text node.
+	 */
+	private void buildSlices() {
+		ByteBuffer in = input;
+		int end = in.limit();
+		Stack<TagNode> tags = new Stack<TagNode>();
+		// last child added to every open tag, to append without walking the siblings
+		Stack<TagNode> lasts = new Stack<TagNode>();
+		int pos = nextLine(in, 0, end);
+		root = new TagNode("html", null, null);
+		tags.push(root);
+		lasts.push(null);
+		
+		while (pos < end) {
+			int next = nextLine(in, pos, end);
+			int stop = next;
+			if (stop > pos && in.get(stop-1) == '\n') {
+				stop--;
+			}
+			if (stop > pos && in.get(stop-1) == '\r') {
+				stop--;
+			}
+			TagNode temp;
+			boolean isTag = false;
+			if (stop > pos && in.get(pos) == '<') {
+				if (stop > pos+1 && in.get(pos+1) == '/') {
+					tags.pop();
+					lasts.pop();
+					pos = next;
+					continue;
+				}
+				String str = decode(in, pos, stop);
+				str = str.replace("<", "");
+				str = str.replace(">", "");
+				temp = new TagNode(str, null, null);
+				isTag = true;
+			} else if (TextSlice.isASCII(in, pos, stop)) {
+				temp = new TagNode(new TextSlice(in, pos, stop-pos));
+			} else {
+				temp = new TagNode(decode(in, pos, stop), null, null);
+			}
+			TagNode last = lasts.pop();
+			if (last == null) {
+				tags.peek().firstChild = temp;
+			} else {
+				last.sibling = temp;
+			}
+			lasts.push(temp);
+			if (isTag) {
+				tags.push(temp);
+				lasts.push(null);
+			}
+			pos = next;
+		}
+	}
+	
+	/**
+	 * Returns the index after the end of the line starting at pos, including its '\n'
+	 */
+	private static int nextLine(ByteBuffer in, int pos, int end) {
+		while (pos < end && in.get(pos) != '\n') {
+			pos++;
+		}
+		return pos < end ? pos+1 : end;
+	}
+	
+	private static String decode(ByteBuffer in, int from, int to) {
+		byte[] b = new byte[to-from];
+		for (int i=from; i < to; i++) {
+			b[i-from] = in.get(i);
+		}
+		return new String(b, Charset.forName("UTF-8"));
 	}
 	
 	
+	/**
+	 * Sets the number of threads used by replaceTag, removeTag, addTag and addTags. With
+	 * more than one thread, the children of the first node that has many of them (such as
+	 * a long body or a big table) are rewritten in parallel, in ranges that are stitched
+	 * back together in order. The resulting tree is the same as with one thread.
+	 * 
+	 * @param parallelism Number of threads, 1 to run sequentially
+	 * @throws IllegalArgumentException If parallelism is less than 1
+	 */
+	public void setParallelism(int parallelism) 
+	throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		if (pool != null) {
+			pool.shutdown();
+		}
+		pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+	}
+	
+	/**
+	 * Turns fragment caching on or off. With caching on, getHTML keeps the serialized html
+	 * of every element, and every edit resets it for the changed nodes and the nodes above
+	 * them. The next getHTML then only serializes the changed region again, and copies the
+	 * cached html of everything else. This costs memory proportional to the document size
+	 * times the depth of the tree. Turning caching off discards all cached html.
+	 * 
+	 * @param caching True to cache html, false not to
+	 */
+	public void setFragmentCaching(boolean caching) {
+		if (this.caching && !caching) {
+			clearhtml(root);
+		}
+		this.caching = caching;
+	}
+	
+	private void clearhtml(TagNode root) {
+		for (TagNode ptr=root; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild != null) {
+				ptr.html = null;
+				clearhtml(ptr.firstChild);
+			}
+		}
+	}
+	
 	/**
 	 * Replaces all occurrences of an old tag in the DOM tree with a new tag
 	 * 
 	 * @param oldTag Old tag
 	 * @param newTag Replacement tag
 	 */
-	public void replaceTag(String oldTag, String newTag) {
-		replacetag (root, oldTag, newTag);
+	public void replaceTag(final String oldTag, final String newTag) {
+		tagIndex = null;
+		new ParallelTransform() {
+			boolean apply(TagNode head) {
+				return replacetag(head, oldTag, newTag);
+			}
+		}.run(this);
 	}
-	private void replacetag(TagNode root, String oldTag, String newTag){
+	private boolean replacetag(TagNode root, String oldTag, String newTag){
 		boolean possible = false;
 		if((oldTag.equals("em") && newTag.equals("b"))||(oldTag.equals("b") && newTag.equals("em"))){
 			possible = true;
@@ -90,43 +319,165 @@ public class Tree {
 		
 		if (possible == true){
 			if (root == null){
-				return;
+				return false;
 			}
-			if (root.tag.equals(oldTag) && root.firstChild != null){
+			boolean changed = false;
+			if (root.firstChild != null && root.tag.equals(oldTag)){
 				root.tag = newTag;
+				changed = true;
 			}
-			replacetag(root.sibling, oldTag, newTag);
-			replacetag(root.firstChild, oldTag, newTag);
-
+			boolean siblings = replacetag(root.sibling, oldTag, newTag);
+			if (replacetag(root.firstChild, oldTag, newTag)) {
+				changed = true;
+			}
+			if (changed) {
+				root.html = null;
+			}
+			return changed || siblings;
 		}
-		return;
+		return false;
 	}
 	/**
-	 * Boldfaces every column of the given row of the table in the DOM tree. The boldface (b)
+	 * Boldfaces every column of the given row of the first table in the DOM tree. The boldface (b)
 	 * tag appears directly under the td tag of every column of this row.
 	 * 
 	 * @param row Row to bold, first row is numbered 1 (not 0).
+	 * @throws IllegalArgumentException If there is no table, or the table does not have the row
 	 */
-	public void boldRow(int row) {
-		TagNode table = findTable(root);
-		TagNode ptrrow = table.firstChild;
-		
-		for (int r=1; r!=row; r++){
-			ptrrow = ptrrow.sibling;
+	public void boldRow(int row) 
+	throws IllegalArgumentException {
+		boldRows(1, row, row);
+	}
+	
+	/**
+	 * Boldfaces every column of the given row of the given table.
+	 * 
+	 * @param table Table, in document order, first table is numbered 1 (not 0).
+	 * @param row Row to bold, first row is numbered 1 (not 0).
+	 * @throws IllegalArgumentException If there is no such table, or it does not have the row
+	 */
+	public void boldRow(int table, int row) 
+	throws IllegalArgumentException {
+		boldRows(table, row, row);
+	}
+	
+	/**
+	 * Boldfaces every column of the rows from one row to another of the first table.
+	 * 
+	 * @param from First row to bold, first row of the table is numbered 1 (not 0).
+	 * @param to Last row to bold
+	 * @throws IllegalArgumentException If there is no table, or the table does not have all the rows
+	 */
+	public void boldRows(int from, int to) 
+	throws IllegalArgumentException {
+		boldRows(1, from, to);
+	}
+	
+	/**
+	 * Boldfaces every column of the rows from one row to another of the given table.
+	 * 
+	 * @param table Table, in document order, first table is numbered 1 (not 0).
+	 * @param from First row to bold, first row of the table is numbered 1 (not 0).
+	 * @param to Last row to bold
+	 * @throws IllegalArgumentException If there is no such table, or it does not have all the rows
+	 */
+	public void boldRows(int table, int from, int to) 
+	throws IllegalArgumentException {
+		Table t = table(table);
+		if (from < 1 || to < from || to > t.rows.length) {
+			throw new IllegalArgumentException("table " + table + " does not have rows " + from + " to " + to);
 		}
-		
-		for (TagNode ptrcol = ptrrow.firstChild; ptrcol != null; ptrcol = ptrcol.sibling){
-			TagNode b = new TagNode ("b", ptrcol.firstChild, null);
-			ptrcol.firstChild =b;
+		for (int r=from-1; r < to; r++) {
+			for (TagNode cell: t.cells[r]) {
+				bold(cell);
+			}
+			t.rows[r].html = null;
 		}
-		
+		t.invalidate();
+		version++;
+		tagIndex = null;
+	}
+	
+	/**
+	 * Boldfaces the given column of every row of the first table. Rows with fewer columns
+	 * are left alone.
+	 * 
+	 * @param col Column to bold, first column is numbered 1 (not 0).
+	 * @throws IllegalArgumentException If there is no table, or no row of the table has the column
+	 */
+	public void boldColumn(int col) 
+	throws IllegalArgumentException {
+		boldColumn(1, col);
+	}
+	
+	/**
+	 * Boldfaces the given column of every row of the given table. Rows with fewer columns
+	 * are left alone.
+	 * 
+	 * @param table Table, in document order, first table is numbered 1 (not 0).
+	 * @param col Column to bold, first column is numbered 1 (not 0).
+	 * @throws IllegalArgumentException If there is no such table, or no row of it has the column
+	 */
+	public void boldColumn(int table, int col) 
+	throws IllegalArgumentException {
+		Table t = table(table);
+		boolean found = false;
+		for (int r=0; col >= 1 && r < t.rows.length; r++) {
+			if (col <= t.cells[r].length) {
+				bold(t.cells[r][col-1]);
+				t.rows[r].html = null;
+				found = true;
+			}
+		}
+		if (!found) {
+			throw new IllegalArgumentException("table " + table + " does not have column " + col);
+		}
+		t.invalidate();
+		version++;
+		tagIndex = null;
+	}
+	
+	/**
+	 * Returns the number of tables in the DOM tree, nested tables included
+	 * 
+	 * @return Number of tables
+	 */
+	public int getTableCount() {
+		return tables().size();
+	}
+	
+	/**
+	 * Returns the table index, building it first if an edit has reset it
+	 */
+	private ArrayList<Table> tables() {
+		if (tables == null) {
+			tables = Table.index(root);
+		}
+		return tables;
+	}
+	
+	private Table table(int table) 
+	throws IllegalArgumentException {
+		ArrayList<Table> all = tables();
+		if (table < 1 || table > all.size()) {
+			throw new IllegalArgumentException("no table " + table);
+		}
+		return all.get(table-1);
+	}
+	
+	/**
+	 * Puts everything under a cell under a new b tag
+	 */
+	private void bold(TagNode cell) {
+		cell.firstChild = new TagNode("b", cell.firstChild, null);
+		cell.html = null;
 	}
 	
 	public TagNode findTable(TagNode root){
 		if (root == null){
 			return null;
 		}
-		if(root.tag.equals("table")){
+		if(root.firstChild != null && root.tag.equals("table")){
 			return root;
 		}
 		TagNode s = findTable (root.sibling);
@@ -147,21 +498,42 @@ public class Tree {
 	 * 
 	 * @param tag Tag to be removed, can be p, em, b, ol, or ul
 	 */
-	public void removeTag(String tag) {
+	public void removeTag(final String tag) {
+		version++;
+		tagIndex = null;
+		tables = null;
 		if(tag.equals("p") || tag.equals("em") || tag.equals("b")) {
-			removetag1(root, tag);
+			new ParallelTransform() {
+				boolean apply(TagNode head) {
+					return removetag1(head, tag);
+				}
+				boolean moves(TagNode node) {
+					return node.tag.equals(tag);
+				}
+			}.run(this);
 		
 		}else if(tag.equals("ol") || tag.equals("ul")) {
-			removetag2(root, tag);
+			new ParallelTransform() {
+				boolean apply(TagNode head) {
+					return removetag2(head, tag);
+				}
+				boolean moves(TagNode node) {
+					return node.tag.equals(tag);
+				}
+			}.run(this);
 		}
 	}
 	
-	private void removetag1(TagNode root, String tag){
+	private boolean removetag1(TagNode root, String tag){
 		if(root == null){
-			return;
+			return false;
 		}
-		if(root.tag.equals(tag) && root.firstChild != null) {
+		boolean changed = false;
+		if(root.firstChild != null && root.tag.equals(tag)) {
+			// root takes the place of its first child, including its cached html
+			root.html = root.firstChild.html;
 			root.tag = root.firstChild.tag;
+			root.slice = root.firstChild.slice;
 			if(root.firstChild.sibling != null) {
 				TagNode ptr = null;
 				for(ptr = root.firstChild; ptr.sibling != null; ptr = ptr.sibling);
@@ -169,31 +541,45 @@ public class Tree {
 				root.sibling = root.firstChild.sibling;
 			}
 			root.firstChild = root.firstChild.firstChild;
+			changed = true;
 		}
 		
-		removetag1(root.firstChild, tag); 
-		removetag1(root.sibling, tag);
+		if (removetag1(root.firstChild, tag)) {
+			root.html = null;
+			changed = true;
+		}
+		return removetag1(root.sibling, tag) || changed;
 
 	}
 
-	private void removetag2(TagNode root, String tag){
+	private boolean removetag2(TagNode root, String tag){
 		if(root == null){
-			return;
+			return false;
 		}
-		if(root.tag.equals(tag) && root.firstChild != null) {
+		boolean changed = false;
+		if(root.firstChild != null && root.tag.equals(tag)) {
 			root.tag = "p";
+			root.html = null;
 			TagNode ptr = null;
 			for(ptr = root.firstChild; ptr.sibling != null; ptr = ptr.sibling){
 				ptr.tag = "p"; 
+				ptr.slice = null;
+				ptr.html = null;
 			}
 			ptr.tag = "p";
+			ptr.slice = null;
+			ptr.html = null;
 			ptr.sibling = root.sibling;
 			root.sibling = root.firstChild.sibling;
 			root.firstChild = root.firstChild.firstChild;
+			changed = true;
 		}
 		
-		removetag2(root.firstChild, tag); 
-		removetag2(root.sibling, tag);
+		if (removetag2(root.firstChild, tag)) {
+			root.html = null;
+			changed = true;
+		}
+		return removetag2(root.sibling, tag) || changed;
 
 	}
 	
@@ -204,20 +590,42 @@ public class Tree {
 	 * @param tag Tag to be added
 	 */
 public void addTag(String word, String tag) {
+		tagIndex = null;
 		
-		if(tag.equals("em") || tag.equals("b")) 
-			addtag(root, word.toLowerCase(), tag); 
+		if(tag.equals("em") || tag.equals("b")) {
+			final String target = word.toLowerCase();
+			final String newTag = tag;
+			boolean changed = new ParallelTransform() {
+				boolean apply(TagNode head) {
+					return addtag(head, target, newTag);
+				}
+			}.run(this);
+			if (changed) {
+				textSplit();
+			}
+		}
 	}
 	
-	private void addtag(TagNode root, String word, String tag){
+	private boolean addtag(TagNode root, String word, String tag){
 		if(root == null){
-			return; 
+			return false; 
 		}
 		
-		addtag(root.firstChild, word, tag);
-		addtag(root.sibling, word, tag);
+		boolean changed = addtag(root.firstChild, word, tag);
+		if (changed) {
+			root.html = null;
+		}
+		changed = addtag(root.sibling, word, tag) || changed;
 		
 		if(root.firstChild == null){
+			if (root.slice != null) {
+				// the text is only made into a String if it may be split
+				if (!root.slice.containsLowerCase(word)) {
+					return changed;
+				}
+				root.tag = root.slice.toString();
+				root.slice = null;
+			}
 			while(root.tag.toLowerCase().contains(word)){
 				String[] str = root.tag.split(" ");
 				Boolean getit = false;
@@ -236,8 +644,9 @@ public void addTag(String word, String tag) {
 				}
 				
 				if(!getit){ 
-					return;
+					return changed;
 				}
+				changed = true;
 				
 				String remaintag = sb.toString().trim(); 
 				
@@ -264,10 +673,227 @@ public void addTag(String word, String tag) {
 				}
 			}
 		}
-
+		return changed;
 	}
 
 	
+	/**
+	 * Adds tags around all occurrences of several words in the DOM tree, in a single pass
+	 * over each text node. An occurrence is what addTag would tag: a space-separated token
+	 * that is the word, ignoring case, optionally followed by one of . ? ! , or -. Entries
+	 * whose tag is neither em nor b are ignored.
+	 * 
+	 * @param wordToTag Map from each word to the tag to be added around it
+	 */
+	public void addTags(Map<String,String> wordToTag) {
+		tagIndex = null;
+		HashMap<String,String> targets = new HashMap<String,String>();
+		for (Map.Entry<String,String> entry: wordToTag.entrySet()) {
+			if (entry.getValue().equals("em") || entry.getValue().equals("b")) {
+				targets.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!targets.isEmpty()) {
+			final WordMatcher matcher = new WordMatcher(targets);
+			boolean changed = new ParallelTransform() {
+				boolean apply(TagNode head) {
+					return addtags(head, matcher);
+				}
+			}.run(this);
+			if (changed) {
+				textSplit();
+			}
+		}
+	}
+	
+	private boolean addtags(TagNode root, WordMatcher matcher) {
+		boolean changed = false;
+		for (TagNode ptr=root; ptr != null; ptr=ptr.sibling) {
+			if (ptr.firstChild != null) {
+				if (addtags(ptr.firstChild, matcher)) {
+					ptr.html = null;
+					changed = true;
+				}
+				continue;
+			}
+			int[] pieces = matcher.split(ptr.text());
+			if (pieces.length == 0) {
+				continue;
+			}
+			changed = true;
+			
+			String text = ptr.text().toString();
+			TagNode head = new TagNode(null, null, null);
+			TagNode last = head;
+			for (int i=0; i < pieces.length; i+=3) {
+				TagNode piece = new TagNode(text.substring(pieces[i], pieces[i+1]), null, null);
+				if (pieces[i+2] >= 0) {
+					piece = new TagNode(matcher.tag(pieces[i+2]), piece, null);
+				}
+				last.sibling = piece;
+				last = piece;
+			}
+			
+			// the text node itself becomes the first piece, since its predecessor points to it
+			TagNode first = head.sibling;
+			last.sibling = ptr.sibling;
+			ptr.tag = first.tag;
+			ptr.slice = null;
+			ptr.firstChild = first.firstChild;
+			ptr.sibling = first.sibling;
+			ptr = last == first ? ptr : last;
+		}
+		return changed;
+	}
+	
+	/**
+	 * Finds all elements that match a CSS selector (see Selector for the syntax).
+	 * 
+	 * @param selector Selector text
+	 * @return Handles of the matching elements, in document order
+	 * @throws IllegalArgumentException If the selector is not in the supported syntax
+	 */
+	public ArrayList<NodeHandle> select(String selector) 
+	throws IllegalArgumentException {
+		return select(Selector.compile(selector));
+	}
+	
+	/**
+	 * Finds all elements that match a compiled selector. The first call after an edit
+	 * makes one pass over the tree, and indexes the elements by tag on the way. Until the
+	 * next edit, selectors whose last step names a tag are then answered from the index,
+	 * checking only the elements with that tag.
+	 * 
+	 * @param selector Compiled selector
+	 * @return Handles of the matching elements, in document order
+	 */
+	public ArrayList<NodeHandle> select(Selector selector) {
+		if (root == null) {
+			return new ArrayList<NodeHandle>();
+		}
+		if (tagIndex != null && selector.lastTag() != null) {
+			ArrayList<NodeHandle> candidates = tagIndex.get(selector.lastTag());
+			return selector.filter(candidates == null ? new ArrayList<NodeHandle>() : candidates);
+		}
+		HashMap<String,ArrayList<NodeHandle>> index = null;
+		if (tagIndex == null) {
+			index = new HashMap<String,ArrayList<NodeHandle>>();
+		}
+		ArrayList<NodeHandle> found = selector.scan(root, version, index);
+		if (index != null) {
+			tagIndex = index;
+		}
+		return found;
+	}
+	
+	/**
+	 * Replaces the tag of a selected element.
+	 * 
+	 * @param handle Handle of the element, from select
+	 * @param newTag Replacement tag
+	 * @throws IllegalStateException If the structure of the tree changed since the handle was made
+	 */
+	public void replaceTag(NodeHandle handle, String newTag) 
+	throws IllegalStateException {
+		check(handle);
+		handle.node.tag = newTag;
+		invalidate(handle);
+		tagIndex = null;
+		tables = null;
+	}
+	
+	/**
+	 * Removes a selected element, putting its children in its place. As with removeTag,
+	 * the children of a removed ol or ul become p tags.
+	 * 
+	 * @param handle Handle of the element, from select
+	 * @throws IllegalArgumentException If the element is the root
+	 * @throws IllegalStateException If the structure of the tree changed since the handle was made
+	 */
+	public void removeTag(NodeHandle handle) 
+	throws IllegalArgumentException, IllegalStateException {
+		check(handle);
+		if (handle.parent == null) {
+			throw new IllegalArgumentException("can't remove the root");
+		}
+		TagNode node = handle.node;
+		TagNode parent = handle.parent.node;
+		TagNode prev = null;
+		for (TagNode ptr=parent.firstChild; ptr != node; ptr=ptr.sibling) {
+			prev = ptr;
+		}
+		boolean list = node.tag.equals("ol") || node.tag.equals("ul");
+		TagNode last = null;
+		for (TagNode ptr=node.firstChild; ptr != null; ptr=ptr.sibling) {
+			if (list) {
+				ptr.tag = "p";
+				ptr.slice = null;
+				ptr.html = null;
+			}
+			last = ptr;
+		}
+		last.sibling = node.sibling;
+		if (prev == null) {
+			parent.firstChild = node.firstChild;
+		} else {
+			prev.sibling = node.firstChild;
+		}
+		invalidate(handle.parent);
+		version++;
+		tagIndex = null;
+		tables = null;
+	}
+	
+	/**
+	 * Adds a tag around all occurrences of a word under a selected element, as addTag does
+	 * for the whole tree. If a tag is added, the structure version changes, since the new
+	 * elements shift the positions of the elements after them.
+	 * 
+	 * @param handle Handle of the element, from select
+	 * @param word Word around which tag is to be added
+	 * @param tag Tag to be added
+	 * @throws IllegalStateException If the structure of the tree changed since the handle was made
+	 */
+	public void addTag(NodeHandle handle, String word, String tag) 
+	throws IllegalStateException {
+		check(handle);
+		if ((tag.equals("em") || tag.equals("b")) && addtag(handle.node.firstChild, word.toLowerCase(), tag)) {
+			invalidate(handle);
+			textSplit();
+			tagIndex = null;
+		}
+	}
+	
+	/**
+	 * Notes that text nodes were split around new elements. The new elements shift the
+	 * positions of the elements after them, so the structure version changes and the table
+	 * index is reset, but no element moved, so the parallel container stays good.
+	 */
+	private void textSplit() {
+		boolean current = containerVersion == version;
+		version++;
+		if (current) {
+			containerVersion = version;
+		}
+		tables = null;
+	}
+	
+	private void check(NodeHandle handle) 
+	throws IllegalStateException {
+		if (handle.version != version) {
+			throw new IllegalStateException("tree structure changed since the handle was made");
+		}
+	}
+	
+	/**
+	 * Resets the cached html of a selected element and of every element above it
+	 */
+	private void invalidate(NodeHandle handle) {
+		for (NodeHandle h=handle; h != null; h=h.parent) {
+			h.node.html = null;
+		}
+	}
+	
 	/**
 	 * Gets the HTML represented by this DOM tree. The returned string includes
 	 * new lines, so that when it is printed, it will be identical to the
@@ -276,6 +902,9 @@ public void addTag(String word, String tag) {
 	 * @return HTML string, including new lines. 
 	 */
 	public String getHTML() {
+		if (caching && root != null && root.sibling == null && root.firstChild != null) {
+			return html(root);
+		}
 		StringBuilder sb = new StringBuilder();
 		getHTML(root, sb);
 		return sb.toString();
@@ -284,8 +913,12 @@ public void addTag(String word, String tag) {
 	private void getHTML(TagNode root, StringBuilder sb) {
 		for (TagNode ptr=root; ptr != null;ptr=ptr.sibling) {
 			if (ptr.firstChild == null) {
-				sb.append(ptr.tag);
+				sb.append(ptr.text());
 				sb.append("\n");
+			} else if (ptr.html != null) {
+				sb.append(ptr.html);
+			} else if (caching) {
+				sb.append(html(ptr));
 			} else {
 				sb.append("<");
 				sb.append(ptr.tag);
@@ -298,4 +931,66 @@ public void addTag(String word, String tag) {
 		}
 	}
 	
+	/**
+	 * Returns the html of an element, serializing and caching it if it is not cached
+	 */
+	private String html(TagNode node) {
+		if (node.html == null) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("<");
+			sb.append(node.tag);
+			sb.append(">\n");
+			getHTML(node.firstChild, sb);
+			sb.append("</");
+			sb.append(node.tag);
+			sb.append(">\n");
+			node.html = sb.toString();
+		}
+		return node.html;
+	}
+	
+	/**
+	 * Writes the HTML represented by this DOM tree to a character stream. The characters
+	 * written are exactly those returned by getHTML, but they are streamed through a
+	 * fixed-size buffer instead of being collected into a single string first.
+	 * 
+	 * @param out Writer to which the HTML is written; it is neither flushed nor closed
+	 * @throws IOException If the writer throws an IOException
+	 */
+	public void writeHTML(Writer out) 
+	throws IOException {
+		serializer().write(root, out);
+	}
+	
+	/**
+	 * Writes the HTML represented by this DOM tree to a byte stream, in UTF-8. The bytes
+	 * written are exactly those of getHTML() encoded in UTF-8.
+	 * 
+	 * @param out Stream to which the HTML is written; it is neither flushed nor closed
+	 * @throws IOException If the stream throws an IOException
+	 */
+	public void writeHTML(OutputStream out) 
+	throws IOException {
+		serializer().write(root, out, Charset.forName("UTF-8"));
+	}
+	
+	/**
+	 * Writes the HTML represented by this DOM tree to a channel, in UTF-8. The bytes
+	 * written are exactly those of getHTML() encoded in UTF-8.
+	 * 
+	 * @param out Channel to which the HTML is written; it is not closed
+	 * @throws IOException If the channel throws an IOException
+	 */
+	public void writeHTML(WritableByteChannel out) 
+	throws IOException {
+		serializer().write(root, out, Charset.forName("UTF-8"));
+	}
+	
+	private HTMLSerializer serializer() {
+		if (serializer == null) {
+			serializer = new HTMLSerializer();
+		}
+		return serializer;
+	}
+	
 }
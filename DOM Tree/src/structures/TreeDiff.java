@@ -0,0 +1,754 @@
+package structures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import structures.PersistentTree.Node;
+
+/**
+ * An edit script that turns one DOM tree into another, made of four kinds of operations:
+ * rename (change the tag of an element or the text of a text node), delete (a subtree),
+ * insert (a subtree) and move (a subtree to another place, possibly under another parent).
+ * Each operation names nodes by path: the child indexes on the way down from the root,
+ * counted in the tree as it is when the operation is applied, after the operations before
+ * it. A script can be applied to a copy of the tree it was made from, and written to and
+ * read from a compact binary form, so that an edited document can be sent as its changes.
+ * <p>
+ * Subtrees that the two trees share, as successive versions of a PersistentTree do, are
+ * skipped without being looked at, so diffing a version against the one it was edited from
+ * costs about as much as the paths the edit copied. For trees with no shared nodes, equal
+ * subtrees are found by structural hashes, which are computed once per node.
+ *
+ */
+public final class TreeDiff {
+
+	/**
+	 * Operation code of a rename
+	 */
+	public static final int RENAME = 0;
+
+	/**
+	 * Operation code of a delete
+	 */
+	public static final int DELETE = 1;
+
+	/**
+	 * Operation code of an insert
+	 */
+	public static final int INSERT = 2;
+
+	/**
+	 * Operation code of a move
+	 */
+	public static final int MOVE = 3;
+
+	/**
+	 * Largest product of the lengths of two changed runs of children that are aligned by
+	 * longest common subsequence; longer runs are aligned greedily
+	 */
+	private static final int LCS_LIMIT = 1 << 16;
+
+	/**
+	 * How the diff uses an old child that is not in the common prefix or suffix
+	 */
+	private static final int UNUSED = 0, KEPT = 1, CONTAINER = 2, EDITED = 3;
+
+	/**
+	 * Where the diff gets a new child that is not in the common prefix or suffix
+	 */
+	private static final int NEW = 0, OLD = 1, UNWRAP = 2, EDIT = 3;
+
+	/**
+	 * One operation of the script
+	 */
+	private static final class Op {
+		final int code;
+		final int[] path;
+		final int[] to;
+		final String tag;
+		final Node node;
+
+		Op(int code, int[] path, int[] to, String tag, Node node) {
+			this.code = code;
+			this.path = path;
+			this.to = to;
+			this.tag = tag;
+			this.node = node;
+		}
+	}
+
+	/**
+	 * Old child in the simulated list of children while a script is made
+	 */
+	private static final class Entry {
+		final int old;
+		ArrayList<Integer> kids;
+
+		Entry(int old) {
+			this.old = old;
+		}
+	}
+
+	/**
+	 * Element under construction while a script is applied, holding Nodes and Builders
+	 */
+	private static final class Builder {
+		String tag;
+		ArrayList<Object> kids;
+
+		Builder(Node node) {
+			tag = node.tag;
+			kids = new ArrayList<Object>(node.children.length+4);
+			for (Node kid: node.children) {
+				kids.add(kid);
+			}
+		}
+	}
+
+	private final ArrayList<Op> ops;
+
+	private TreeDiff(ArrayList<Op> ops) {
+		this.ops = ops;
+	}
+
+	/**
+	 * Makes the script that turns one tree into another.
+	 *
+	 * @param from Tree before the edits, such as a snapshot taken before editing
+	 * @param to Tree after the edits
+	 * @return Edit script
+	 */
+	public static TreeDiff diff(PersistentTree from, PersistentTree to) {
+		ArrayList<Op> ops = new ArrayList<Op>();
+		Node a = from.root, b = to.root;
+		int[] root = new int[0];
+		if (a == null || b == null) {
+			if (a != null) {
+				ops.add(new Op(DELETE, root, null, null, null));
+			}
+			if (b != null) {
+				ops.add(new Op(INSERT, root, null, null, b));
+			}
+		} else if (a.isText() != b.isText()) {
+			ops.add(new Op(DELETE, root, null, null, null));
+			ops.add(new Op(INSERT, root, null, null, b));
+		} else {
+			diff(a, b, root, ops);
+		}
+		return new TreeDiff(ops);
+	}
+
+	/**
+	 * Makes the script that turns one DOM tree into another. Both trees are copied into
+	 * persistent trees first.
+	 *
+	 * @param from Tree before the edits
+	 * @param to Tree after the edits
+	 * @return Edit script
+	 */
+	public static TreeDiff diff(Tree from, Tree to) {
+		return diff(new PersistentTree(from), new PersistentTree(to));
+	}
+
+	/**
+	 * Adds the operations that turn a node into another node of the same kind
+	 */
+	private static void diff(Node a, Node b, int[] path, ArrayList<Op> ops) {
+		if (a.same(b)) {
+			return;
+		}
+		if (!a.tag.equals(b.tag)) {
+			ops.add(new Op(RENAME, path, null, b.tag, null));
+		}
+		if (!b.isText()) {
+			diff(a.children, b.children, path, ops);
+		}
+	}
+
+	/**
+	 * Adds the operations that turn the children of the node at path into new children
+	 */
+	private static void diff(Node[] olds, Node[] news, int[] path, ArrayList<Op> ops) {
+		int n = olds.length, m = news.length;
+		int p = 0;
+		while (p < n && p < m && olds[p].same(news[p])) {
+			p++;
+		}
+		int s = 0;
+		while (s < n-p && s < m-p && olds[n-1-s].same(news[m-1-s])) {
+			s++;
+		}
+		int na = n-p-s, nb = m-p-s;
+		if (na == 0 && nb == 0) {
+			return;
+		}
+		Node[] a = Arrays.copyOfRange(olds, p, p+na);
+		Node[] b = Arrays.copyOfRange(news, p, p+nb);
+
+		int[] use = new int[na];
+		int[] kind = new int[nb];
+		int[] src = new int[nb];
+		int[] srcKid = new int[nb];
+		boolean[] anchor = new boolean[nb];
+		align(a, b, use, kind, src);
+		for (int j=0; j < nb; j++) {
+			anchor[j] = kind[j] == OLD;
+		}
+		moves(a, b, use, kind, src);
+		unwraps(a, b, use, kind, src, srcKid);
+		edits(a, b, use, kind, src, anchor);
+
+		// old children that are not used go first, last first so the indexes stay good
+		for (int i=na-1; i >= 0; i--) {
+			if (use[i] == UNUSED) {
+				ops.add(new Op(DELETE, child(path, p+i), null, null, null));
+			}
+		}
+		ArrayList<Entry> cur = new ArrayList<Entry>(na+nb);
+		Entry[] entries = new Entry[na];
+		for (int i=0; i < na; i++) {
+			if (use[i] != UNUSED) {
+				entries[i] = new Entry(i);
+				if (use[i] == CONTAINER) {
+					entries[i].kids = new ArrayList<Integer>(a[i].children.length);
+					for (int k=0; k < a[i].children.length; k++) {
+						entries[i].kids.add(k);
+					}
+				}
+				cur.add(entries[i]);
+			}
+		}
+
+		// then the new children are put in place one by one, left to right
+		for (int t=0; t < nb; t++) {
+			if (kind[t] == NEW) {
+				ops.add(new Op(INSERT, child(path, p+t), null, null, b[t]));
+				cur.add(t, new Entry(-1));
+				continue;
+			}
+			Entry e = entries[src[t]];
+			int k = t;
+			while (cur.get(k) != e) {
+				k++;
+			}
+			if (kind[t] == UNWRAP) {
+				int ci = e.kids.indexOf(srcKid[t]);
+				ops.add(new Op(MOVE, child(path, p+k, ci), child(path, p+t), null, null));
+				e.kids.remove(ci);
+				cur.add(t, new Entry(-1));
+				continue;
+			}
+			if (k != t) {
+				ops.add(new Op(MOVE, child(path, p+k), child(path, p+t), null, null));
+				cur.remove(k);
+				cur.add(t, e);
+			}
+			if (kind[t] == EDIT) {
+				diff(a[src[t]], b[t], child(path, p+t), ops);
+			}
+		}
+
+		// what is left are the elements whose children were moved out
+		for (int k=cur.size()-1; k >= nb; k--) {
+			ops.add(new Op(DELETE, child(path, p+k), null, null, null));
+		}
+	}
+
+	/**
+	 * Keeps the longest run of old children, in order, that is equal to new children. For
+	 * long runs, the old children are matched greedily instead.
+	 */
+	private static void align(Node[] a, Node[] b, int[] use, int[] kind, int[] src) {
+		int na = a.length, nb = b.length;
+		if (na == 0 || nb == 0) {
+			return;
+		}
+		if ((long)na*nb <= LCS_LIMIT) {
+			int[][] len = new int[na+1][nb+1];
+			for (int i=na-1; i >= 0; i--) {
+				for (int j=nb-1; j >= 0; j--) {
+					len[i][j] = a[i].same(b[j]) ? len[i+1][j+1]+1 : Math.max(len[i+1][j], len[i][j+1]);
+				}
+			}
+			for (int i=0, j=0; i < na && j < nb; ) {
+				if (a[i].same(b[j])) {
+					use[i] = KEPT;
+					kind[j] = OLD;
+					src[j] = i;
+					i++;
+					j++;
+				} else if (len[i+1][j] >= len[i][j+1]) {
+					i++;
+				} else {
+					j++;
+				}
+			}
+			return;
+		}
+		HashMap<Integer,ArrayList<Integer>> byHash = index(a, use);
+		int last = -1;
+		for (int j=0; j < nb; j++) {
+			ArrayList<Integer> list = byHash.get(b[j].hash());
+			if (list == null) {
+				continue;
+			}
+			for (int x=0; x < list.size(); x++) {
+				int i = list.get(x);
+				if (i > last && a[i].same(b[j])) {
+					use[i] = KEPT;
+					kind[j] = OLD;
+					src[j] = i;
+					last = i;
+					list.remove(x);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes new children that are equal to old children left out of the alignment from
+	 * those old children, which are moved into place
+	 */
+	private static void moves(Node[] a, Node[] b, int[] use, int[] kind, int[] src) {
+		HashMap<Integer,ArrayList<Integer>> byHash = null;
+		for (int j=0; j < b.length; j++) {
+			if (kind[j] != NEW) {
+				continue;
+			}
+			if (byHash == null) {
+				byHash = index(a, use);
+			}
+			ArrayList<Integer> list = byHash.get(b[j].hash());
+			for (int x=0; list != null && x < list.size(); x++) {
+				int i = list.get(x);
+				if (a[i].same(b[j])) {
+					use[i] = KEPT;
+					kind[j] = OLD;
+					src[j] = i;
+					list.remove(x);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes new children that are equal to children of unused old elements from there, as
+	 * happens when a tag is removed and its children take its place
+	 */
+	private static void unwraps(Node[] a, Node[] b, int[] use, int[] kind, int[] src, int[] srcKid) {
+		HashMap<Integer,ArrayList<int[]>> byHash = null;
+		for (int j=0; j < b.length; j++) {
+			if (kind[j] != NEW) {
+				continue;
+			}
+			if (byHash == null) {
+				byHash = new HashMap<Integer,ArrayList<int[]>>();
+				for (int i=0; i < a.length; i++) {
+					if (use[i] != UNUSED) {
+						continue;
+					}
+					for (int k=0; k < a[i].children.length; k++) {
+						Integer h = a[i].children[k].hash();
+						ArrayList<int[]> list = byHash.get(h);
+						if (list == null) {
+							list = new ArrayList<int[]>(1);
+							byHash.put(h, list);
+						}
+						list.add(new int[] { i, k });
+					}
+				}
+			}
+			ArrayList<int[]> list = byHash.get(b[j].hash());
+			for (int x=0; list != null && x < list.size(); x++) {
+				int[] at = list.get(x);
+				if (a[at[0]].children[at[1]].same(b[j])) {
+					use[at[0]] = CONTAINER;
+					kind[j] = UNWRAP;
+					src[j] = at[0];
+					srcKid[j] = at[1];
+					list.remove(x);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pairs each remaining new child with an unused old child of the same kind between the
+	 * same two aligned children, preferring one with the same tag, so that it is edited
+	 * in place instead of inserted whole
+	 */
+	private static void edits(Node[] a, Node[] b, int[] use, int[] kind, int[] src, boolean[] anchor) {
+		int from = 0;
+		for (int j=0; j < b.length; j++) {
+			if (anchor[j]) {
+				from = src[j]+1;
+				continue;
+			}
+			if (kind[j] != NEW) {
+				continue;
+			}
+			int to = a.length;
+			for (int k=j+1; k < b.length; k++) {
+				if (anchor[k]) {
+					to = src[k];
+					break;
+				}
+			}
+			int pick = -1;
+			for (int i=from; i < to; i++) {
+				if (use[i] == UNUSED && a[i].isText() == b[j].isText()) {
+					if (a[i].tag.equals(b[j].tag)) {
+						pick = i;
+						break;
+					}
+					if (pick < 0) {
+						pick = i;
+					}
+				}
+			}
+			if (pick >= 0) {
+				use[pick] = EDITED;
+				kind[j] = EDIT;
+				src[j] = pick;
+			}
+		}
+	}
+
+	/**
+	 * Indexes the unused old children by hash
+	 */
+	private static HashMap<Integer,ArrayList<Integer>> index(Node[] a, int[] use) {
+		HashMap<Integer,ArrayList<Integer>> byHash = new HashMap<Integer,ArrayList<Integer>>();
+		for (int i=0; i < a.length; i++) {
+			if (use[i] != UNUSED) {
+				continue;
+			}
+			ArrayList<Integer> list = byHash.get(a[i].hash());
+			if (list == null) {
+				list = new ArrayList<Integer>(1);
+				byHash.put(a[i].hash(), list);
+			}
+			list.add(i);
+		}
+		return byHash;
+	}
+
+	private static int[] child(int[] path, int i) {
+		int[] ret = Arrays.copyOf(path, path.length+1);
+		ret[path.length] = i;
+		return ret;
+	}
+
+	private static int[] child(int[] path, int i, int k) {
+		int[] ret = Arrays.copyOf(path, path.length+2);
+		ret[path.length] = i;
+		ret[path.length+1] = k;
+		return ret;
+	}
+
+	/**
+	 * Applies this script to a tree, which should be equal to the one the script was made
+	 * from. The tree itself is not changed, and the result shares all subtrees the script
+	 * does not touch with it.
+	 *
+	 * @param tree Tree to apply the script to
+	 * @return Edited tree
+	 * @throws IllegalArgumentException If an operation names a node the tree does not have
+	 */
+	public PersistentTree apply(PersistentTree tree)
+	throws IllegalArgumentException {
+		Object[] root = { tree.root };
+		for (Op op: ops) {
+			switch (op.code) {
+			case RENAME:
+				Builder target = op.path.length == 0 ? builder(root, 0) : builder(parent(root, op.path), op.path);
+				target.tag = op.tag;
+				break;
+			case DELETE:
+				detach(root, op.path);
+				break;
+			case INSERT:
+				attach(root, op.path, op.node);
+				break;
+			default:
+				attach(root, op.to, detach(root, op.path));
+			}
+		}
+		return new PersistentTree(root[0] == null ? null : freeze(root[0]));
+	}
+
+	/**
+	 * Returns the builder of the parent of the node at a path that is not empty, making
+	 * builders on the way down from the root
+	 */
+	private static Builder parent(Object[] root, int[] path) {
+		Builder b = builder(root, 0);
+		for (int d=0; d < path.length-1; d++) {
+			check(b, path[d], b.kids.size()-1);
+			Object kid = b.kids.get(path[d]);
+			if (!(kid instanceof Builder)) {
+				kid = new Builder((Node)kid);
+				b.kids.set(path[d], kid);
+			}
+			b = (Builder)kid;
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the builder of the node at the last index of a path, given its parent
+	 */
+	private static Builder builder(Builder parent, int[] path) {
+		int i = path[path.length-1];
+		check(parent, i, parent.kids.size()-1);
+		Object kid = parent.kids.get(i);
+		if (!(kid instanceof Builder)) {
+			kid = new Builder((Node)kid);
+			parent.kids.set(i, kid);
+		}
+		return (Builder)kid;
+	}
+
+	/**
+	 * Returns the builder of the root, held in root[i]
+	 */
+	private static Builder builder(Object[] root, int i) {
+		if (root[i] == null) {
+			throw new IllegalArgumentException("script does not fit this tree: no root");
+		}
+		if (!(root[i] instanceof Builder)) {
+			root[i] = new Builder((Node)root[i]);
+		}
+		return (Builder)root[i];
+	}
+
+	private static Object detach(Object[] root, int[] path) {
+		if (path.length == 0) {
+			Object ret = root[0];
+			if (ret == null) {
+				throw new IllegalArgumentException("script does not fit this tree: no root");
+			}
+			root[0] = null;
+			return ret;
+		}
+		Builder b = parent(root, path);
+		check(b, path[path.length-1], b.kids.size()-1);
+		return b.kids.remove(path[path.length-1]);
+	}
+
+	private static void attach(Object[] root, int[] path, Object node) {
+		if (path.length == 0) {
+			if (root[0] != null) {
+				throw new IllegalArgumentException("script does not fit this tree: root exists");
+			}
+			root[0] = node;
+			return;
+		}
+		Builder b = parent(root, path);
+		check(b, path[path.length-1], b.kids.size());
+		b.kids.add(path[path.length-1], node);
+	}
+
+	private static void check(Builder b, int i, int max) {
+		if (i < 0 || i > max) {
+			throw new IllegalArgumentException("script does not fit this tree: <" + b.tag
+					+ "> has no child " + i);
+		}
+	}
+
+	/**
+	 * Turns a builder, and the builders under it, back into nodes
+	 */
+	private static Node freeze(Object o) {
+		if (o instanceof Node) {
+			return (Node)o;
+		}
+		Builder b = (Builder)o;
+		if (b.kids.isEmpty()) {
+			return new Node(b.tag, PersistentTree.NO_CHILDREN);
+		}
+		Node[] kids = new Node[b.kids.size()];
+		for (int i=0; i < kids.length; i++) {
+			kids[i] = freeze(b.kids.get(i));
+		}
+		return new Node(b.tag, kids);
+	}
+
+	/**
+	 * Returns the number of operations in this script
+	 *
+	 * @return Number of operations
+	 */
+	public int size() {
+		return ops.size();
+	}
+
+	/**
+	 * Tells if this script does nothing, because the trees were equal
+	 *
+	 * @return True if there are no operations, false if there are
+	 */
+	public boolean isEmpty() {
+		return ops.isEmpty();
+	}
+
+	/**
+	 * Writes this script in a compact binary form, which readFrom reads back.
+	 *
+	 * @param out Target
+	 * @throws IOException If the target throws an IOException
+	 */
+	public void writeTo(DataOutput out)
+	throws IOException {
+		writeInt(out, ops.size());
+		for (Op op: ops) {
+			out.writeByte(op.code);
+			writePath(out, op.path);
+			if (op.code == RENAME) {
+				writeString(out, op.tag);
+			} else if (op.code == INSERT) {
+				writeNode(out, op.node);
+			} else if (op.code == MOVE) {
+				writePath(out, op.to);
+			}
+		}
+	}
+
+	/**
+	 * Reads a script written by writeTo.
+	 *
+	 * @param in Source
+	 * @return Script
+	 * @throws IOException If the source throws an IOException, or does not hold a script
+	 */
+	public static TreeDiff readFrom(DataInput in)
+	throws IOException {
+		int count = readInt(in);
+		ArrayList<Op> ops = new ArrayList<Op>(Math.min(count, 1024));
+		for (int i=0; i < count; i++) {
+			int code = in.readByte();
+			int[] path = readPath(in);
+			if (code == RENAME) {
+				ops.add(new Op(code, path, null, readString(in), null));
+			} else if (code == DELETE) {
+				ops.add(new Op(code, path, null, null, null));
+			} else if (code == INSERT) {
+				ops.add(new Op(code, path, null, null, readNode(in)));
+			} else if (code == MOVE) {
+				ops.add(new Op(code, path, readPath(in), null, null));
+			} else {
+				throw new IOException("bad operation code " + code);
+			}
+		}
+		return new TreeDiff(ops);
+	}
+
+	private static void writeNode(DataOutput out, Node node)
+	throws IOException {
+		writeString(out, node.tag);
+		writeInt(out, node.children.length);
+		for (Node kid: node.children) {
+			writeNode(out, kid);
+		}
+	}
+
+	private static Node readNode(DataInput in)
+	throws IOException {
+		String tag = readString(in);
+		int count = readInt(in);
+		if (count == 0) {
+			return new Node(tag, PersistentTree.NO_CHILDREN);
+		}
+		Node[] kids = new Node[count];
+		for (int i=0; i < count; i++) {
+			kids[i] = readNode(in);
+		}
+		return new Node(tag, kids);
+	}
+
+	private static void writePath(DataOutput out, int[] path)
+	throws IOException {
+		writeInt(out, path.length);
+		for (int i: path) {
+			writeInt(out, i);
+		}
+	}
+
+	private static int[] readPath(DataInput in)
+	throws IOException {
+		int[] path = new int[readInt(in)];
+		for (int i=0; i < path.length; i++) {
+			path[i] = readInt(in);
+		}
+		return path;
+	}
+
+	private static void writeString(DataOutput out, String str)
+	throws IOException {
+		byte[] bytes = str.getBytes("UTF-8");
+		writeInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in)
+	throws IOException {
+		byte[] bytes = new byte[readInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Writes a non-negative int in seven-bit groups, low group first
+	 */
+	private static void writeInt(DataOutput out, int v)
+	throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	private static int readInt(DataInput in)
+	throws IOException {
+		int v = 0;
+		for (int shift=0; shift < 35; shift+=7) {
+			int b = in.readByte();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (v < 0) {
+					break;
+				}
+				return v;
+			}
+		}
+		throw new IOException("bad count in script");
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Op op: ops) {
+			if (op.code == RENAME) {
+				sb.append("rename ").append(Arrays.toString(op.path)).append(' ').append(op.tag);
+			} else if (op.code == DELETE) {
+				sb.append("delete ").append(Arrays.toString(op.path));
+			} else if (op.code == INSERT) {
+				sb.append("insert ").append(Arrays.toString(op.path)).append(' ').append(op.node);
+			} else {
+				sb.append("move ").append(Arrays.toString(op.path)).append(" -> ").append(Arrays.toString(op.to));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
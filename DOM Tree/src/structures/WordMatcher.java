@@ -0,0 +1,310 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton over a set of words, each associated with a tag. It finds, in
+ * one left-to-right pass over a text, every space-separated token that is one of the words,
+ * optionally followed by a single punctuation mark (one of . ? ! , -). This is the same
+ * notion of occurrence that Tree.addTag uses. Matching ignores case; the words are matched
+ * literally, and a word that contains a space can never match a token.
+ *
+ */
+public class WordMatcher {
+
+	/**
+	 * Characters that may follow a word at the end of a token
+	 */
+	static final String PUNCTUATION = ".?!,-";
+
+	/**
+	 * Shared result for texts with no occurrences
+	 */
+	private static final int[] NONE = new int[0];
+
+	/**
+	 * Transition labels of every state, sorted so they can be binary searched
+	 */
+	private char[][] labels;
+
+	/**
+	 * Transition targets of every state, parallel to labels
+	 */
+	private int[][] targets;
+
+	/**
+	 * Failure link of every state
+	 */
+	private int[] fail;
+
+	/**
+	 * Length of the string spelled by the path to every state
+	 */
+	private int[] depth;
+
+	/**
+	 * Index of the word spelled by every state, or -1 if the state does not end a word
+	 */
+	private int[] word;
+
+	/**
+	 * Nearest state on the failure chain of every state that ends a word, or -1
+	 */
+	private int[] output;
+
+	/**
+	 * Tag of every word, by word index
+	 */
+	private String[] tags;
+
+	/**
+	 * Builds the automaton for the given words.
+	 *
+	 * @param wordToTag Map from word to the tag to add around it
+	 */
+	public WordMatcher(Map<String,String> wordToTag) {
+		ArrayList<HashMap<Character,Integer>> trie = new ArrayList<HashMap<Character,Integer>>();
+		ArrayList<Integer> ends = new ArrayList<Integer>();
+		ArrayList<String> tagList = new ArrayList<String>();
+		trie.add(new HashMap<Character,Integer>());
+		ends.add(-1);
+
+		for (Map.Entry<String,String> entry: wordToTag.entrySet()) {
+			String w = entry.getKey().toLowerCase();
+			if (w.length() == 0 || w.indexOf(' ') >= 0) {
+				continue;
+			}
+			int state = 0;
+			for (int i=0; i < w.length(); i++) {
+				Integer nxt = trie.get(state).get(w.charAt(i));
+				if (nxt == null) {
+					nxt = trie.size();
+					trie.add(new HashMap<Character,Integer>());
+					ends.add(-1);
+					trie.get(state).put(w.charAt(i), nxt);
+				}
+				state = nxt;
+			}
+			if (ends.get(state) == -1) {
+				ends.set(state, tagList.size());
+				tagList.add(entry.getValue());
+			} else {
+				// two keys that differ only in case, the later one wins
+				tagList.set(ends.get(state), entry.getValue());
+			}
+		}
+
+		int n = trie.size();
+		labels = new char[n][];
+		targets = new int[n][];
+		fail = new int[n];
+		depth = new int[n];
+		word = new int[n];
+		output = new int[n];
+		tags = tagList.toArray(new String[tagList.size()]);
+		for (int s=0; s < n; s++) {
+			HashMap<Character,Integer> edges = trie.get(s);
+			Character[] keys = edges.keySet().toArray(new Character[edges.size()]);
+			Arrays.sort(keys);
+			labels[s] = new char[keys.length];
+			targets[s] = new int[keys.length];
+			for (int i=0; i < keys.length; i++) {
+				labels[s][i] = keys[i];
+				targets[s][i] = edges.get(keys[i]);
+			}
+			word[s] = ends.get(s);
+		}
+
+		// breadth-first, so failure links of shallower states are ready when needed
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		output[0] = -1;
+		for (int i=0; i < targets[0].length; i++) {
+			int child = targets[0][i];
+			fail[child] = 0;
+			depth[child] = 1;
+			output[child] = -1;
+			queue[tail++] = child;
+		}
+		while (head < tail) {
+			int s = queue[head++];
+			for (int i=0; i < targets[s].length; i++) {
+				int child = targets[s][i];
+				char c = labels[s][i];
+				int f = fail[s];
+				while (f != 0 && step(f, c) < 0) {
+					f = fail[f];
+				}
+				int g = step(f, c);
+				fail[child] = g < 0 ? 0 : g;
+				depth[child] = depth[s] + 1;
+				output[child] = word[fail[child]] >= 0 ? fail[child] : output[fail[child]];
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * Returns the tag of a word, given its index
+	 *
+	 * @param wordIndex Index of the word, as reported by matches
+	 * @return Tag to add around the word
+	 */
+	public String tag(int wordIndex) {
+		return tags[wordIndex];
+	}
+
+	/**
+	 * Finds all occurrences of the words in a text. Occurrences are reported in text order,
+	 * as triples of token start, token end (exclusive, including any trailing punctuation)
+	 * and word index. If a token is an occurrence of two words, as with "hi." for the words
+	 * "hi" and "hi.", the longer word is reported.
+	 *
+	 * @param text Text to scan
+	 * @return Triples of start, end and word index, one per occurrence
+	 */
+	public int[] matches(CharSequence text) {
+		int[] found = NONE;
+		int count = 0;
+		int len = text.length();
+		int state = 0;
+		int tokenStart = 0;
+		int best = -1, bestEnd = -1;
+
+		for (int i=0; i < len; i++) {
+			char c = Character.toLowerCase(text.charAt(i));
+			if (c == ' ') {
+				if (best >= 0) {
+					if (count+3 > found.length) {
+						found = grow(found);
+					}
+					found[count++] = tokenStart;
+					found[count++] = bestEnd;
+					found[count++] = best;
+					best = -1;
+				}
+				tokenStart = i+1;
+			}
+			int nxt;
+			while ((nxt = step(state, c)) < 0 && state != 0) {
+				state = fail[state];
+			}
+			state = nxt < 0 ? 0 : nxt;
+			if (c == ' ') {
+				continue;
+			}
+
+			int length = i+1-tokenStart;
+			int end = -1;
+			if (i+1 == len || text.charAt(i+1) == ' ') {
+				end = i+1;
+			} else if (PUNCTUATION.indexOf(text.charAt(i+1)) >= 0
+					&& (i+2 == len || text.charAt(i+2) == ' ')) {
+				end = i+2;
+			}
+			if (end < 0) {
+				continue;
+			}
+			// the word must span the whole token, so look for one of exactly this length
+			for (int s = word[state] >= 0 ? state : output[state]; s >= 0 && depth[s] >= length; s = output[s]) {
+				if (depth[s] == length) {
+					best = word[s];
+					bestEnd = end;
+					break;
+				}
+			}
+		}
+		if (best >= 0) {
+			if (count+3 > found.length) {
+				found = grow(found);
+			}
+			found[count++] = tokenStart;
+			found[count++] = bestEnd;
+			found[count++] = best;
+		}
+
+		if (count == found.length) {
+			return found;
+		}
+		int[] ret = new int[count];
+		System.arraycopy(found, 0, ret, 0, count);
+		return ret;
+	}
+
+	/**
+	 * Splits a text the way addTag does when it tags the occurrences of the words: each
+	 * occurrence becomes a piece of its own, and the text between occurrences becomes a
+	 * piece that keeps the space before an occurrence but drops the space after one (and
+	 * drops the space before an occurrence that ends the text). Pieces are reported in text
+	 * order, as triples of start, end (exclusive) and word index, which is -1 for pieces
+	 * that are not occurrences.
+	 *
+	 * @param text Text to split
+	 * @return Triples of start, end and word index, or an empty array if the text has no
+	 *         occurrences
+	 */
+	public int[] split(CharSequence text) {
+		int[] found = matches(text);
+		if (found.length == 0) {
+			return found;
+		}
+		int len = text.length();
+		int[] pieces = new int[found.length*2+3];
+		int count = 0;
+		int cursor = 0;
+		for (int i=0; i < found.length; i+=3) {
+			int start = found[i];
+			if (found[i+1] == len && start > cursor && text.charAt(start-1) == ' ') {
+				start--;
+			}
+			if (start > cursor) {
+				pieces[count++] = cursor;
+				pieces[count++] = start;
+				pieces[count++] = -1;
+			}
+			pieces[count++] = found[i];
+			pieces[count++] = found[i+1];
+			pieces[count++] = found[i+2];
+			cursor = found[i+1];
+			if (cursor < len && text.charAt(cursor) == ' ') {
+				cursor++;
+			}
+		}
+		if (cursor < len) {
+			pieces[count++] = cursor;
+			pieces[count++] = len;
+			pieces[count++] = -1;
+		}
+		int[] ret = new int[count];
+		System.arraycopy(pieces, 0, ret, 0, count);
+		return ret;
+	}
+
+	/**
+	 * Returns the state reached from a state on a character, or -1 if there is no transition
+	 */
+	private int step(int state, char c) {
+		char[] keys = labels[state];
+		int lo = 0, hi = keys.length-1;
+		while (lo <= hi) {
+			int mid = (lo+hi) >>> 1;
+			if (keys[mid] < c) {
+				lo = mid+1;
+			} else if (keys[mid] > c) {
+				hi = mid-1;
+			} else {
+				return targets[state][mid];
+			}
+		}
+		return -1;
+	}
+
+	private static int[] grow(int[] found) {
+		int[] ret = new int[Math.max(12, found.length*2)];
+		System.arraycopy(found, 0, ret, 0, found.length);
+		return ret;
+	}
+}
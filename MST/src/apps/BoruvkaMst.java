@@ -0,0 +1,280 @@
+package apps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import structures.*;
+
+/**
+ * Finds a minimum spanning tree (a forest, if the graph is not connected) with Boruvka's
+ * algorithm, on a fork/join pool. Every round, in parallel over the vertices, finds the
+ * lightest arc out of every component, then unites the two ends of every such arc in a
+ * ConcurrentDisjointSet, and stops when no component has an arc out. Each round at
+ * least halves the number of components, so there are at most log2(n) rounds.
+ * <p>
+ * The lightest arc of a component is kept as a long, weight in the high half and arc
+ * index in the low half, and lowered by compare-and-set, so equal weights are broken the
+ * same way by every thread. Only the union that actually joins two components records
+ * its arc: two components that pick the same edge from both ends, or a ring of equally
+ * light arcs, never add a cycle.
+ */
+public class BoruvkaMst implements MstAlgorithm {
+
+	/**
+	 * Key of a component that has no arc out
+	 */
+	private static final long NONE = Long.MAX_VALUE;
+
+	/**
+	 * Least number of vertices a task scans before it splits in two
+	 */
+	private static final int MIN_GRAIN = 1024;
+
+	private final int parallelism;
+
+	/**
+	 * Initializes this engine to use as many threads as there are processors
+	 */
+	public BoruvkaMst() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Initializes this engine to use the given number of threads
+	 *
+	 * @param parallelism Number of threads, at least 1
+	 * @throws IllegalArgumentException If parallelism is less than 1
+	 */
+	public BoruvkaMst(int parallelism)
+	throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Returns the number of threads this engine uses
+	 *
+	 * @return Parallelism level
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public String getName() {
+		return "boruvka";
+	}
+
+	/**
+	 * State of one run, shared by all tasks
+	 */
+	private static class Run {
+		CompactGraph graph;
+		ConcurrentDisjointSet sets;
+
+		/**
+		 * Component of every vertex, as of the start of the round
+		 */
+		int[] comp;
+
+		/**
+		 * Packed weight and arc index of the lightest arc out of every component, by
+		 * representative vertex
+		 */
+		AtomicLongArray best;
+
+		/**
+		 * Arcs of the tree found so far, and their number
+		 */
+		int[] tree;
+		AtomicInteger treeSize = new AtomicInteger();
+
+		/**
+		 * Whether the current round found any arc between components
+		 */
+		volatile boolean found;
+
+		int grain;
+	}
+
+	/**
+	 * Runs one phase of a round over a range of vertices, splitting it in halves while it
+	 * is larger than the grain
+	 */
+	private static abstract class Phase extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Run run;
+		final int lo, hi;
+
+		Phase(Run run, int lo, int hi) {
+			this.run = run;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		abstract Phase part(int lo, int hi);
+
+		abstract void scan(int lo, int hi);
+
+		protected void compute() {
+			if (hi - lo <= run.grain) {
+				scan(lo, hi);
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(part(lo, mid), part(mid, hi));
+			}
+		}
+	}
+
+	/**
+	 * Notes the component of every vertex, and clears the lightest arc of every component
+	 */
+	private static class Label extends Phase {
+		private static final long serialVersionUID = 1L;
+
+		Label(Run run, int lo, int hi) {
+			super(run, lo, hi);
+		}
+
+		Phase part(int lo, int hi) {
+			return new Label(run, lo, hi);
+		}
+
+		void scan(int lo, int hi) {
+			for (int v=lo; v < hi; v++) {
+				run.comp[v] = run.sets.find(v);
+				run.best.set(v, NONE);
+			}
+		}
+	}
+
+	/**
+	 * Lowers the lightest arc of every component to the lightest arc out of each of its
+	 * vertices that goes to another component
+	 */
+	private static class FindMin extends Phase {
+		private static final long serialVersionUID = 1L;
+
+		FindMin(Run run, int lo, int hi) {
+			super(run, lo, hi);
+		}
+
+		Phase part(int lo, int hi) {
+			return new FindMin(run, lo, hi);
+		}
+
+		void scan(int lo, int hi) {
+			int[] offsets = run.graph.offsets, targets = run.graph.targets, weights = run.graph.weights;
+			int[] comp = run.comp;
+			boolean found = false;
+			for (int v=lo; v < hi; v++) {
+				int c = comp[v];
+				long min = NONE;
+				for (int e=offsets[v]; e < offsets[v+1]; e++) {
+					if (comp[targets[e]] != c) {
+						long key = ((long)weights[e] << 32) | e;
+						if (key < min) {
+							min = key;
+						}
+					}
+				}
+				if (min != NONE) {
+					found = true;
+					long cur = run.best.get(c);
+					while (min < cur && !run.best.compareAndSet(c, cur, min)) {
+						cur = run.best.get(c);
+					}
+				}
+			}
+			if (found) {
+				run.found = true;
+			}
+		}
+	}
+
+	/**
+	 * Unites every component with the other end of its lightest arc
+	 */
+	private static class Contract extends Phase {
+		private static final long serialVersionUID = 1L;
+
+		Contract(Run run, int lo, int hi) {
+			super(run, lo, hi);
+		}
+
+		Phase part(int lo, int hi) {
+			return new Contract(run, lo, hi);
+		}
+
+		void scan(int lo, int hi) {
+			for (int c=lo; c < hi; c++) {
+				long key = run.best.get(c);
+				if (key == NONE) {
+					continue;
+				}
+				int e = (int)key;
+				if (run.sets.union(c, run.graph.targets[e])) {
+					run.tree[run.treeSize.getAndIncrement()] = e;
+				}
+			}
+		}
+	}
+
+	public int[] findArcs(CompactGraph graph) {
+		int n = graph.vertexCount();
+		Run run = new Run();
+		run.graph = graph;
+		run.sets = new ConcurrentDisjointSet(n);
+		run.comp = new int[n];
+		run.best = new AtomicLongArray(n);
+		run.tree = new int[Math.max(n-1, 0)];
+		run.grain = Math.max(MIN_GRAIN, n / (parallelism * 8));
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			while (true) {
+				pool.invoke(new Label(run, 0, n));
+				run.found = false;
+				pool.invoke(new FindMin(run, 0, n));
+				if (!run.found) {
+					break;
+				}
+				pool.invoke(new Contract(run, 0, n));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return Arrays.copyOf(run.tree, run.treeSize.get());
+	}
+
+	/**
+	 * Finds a minimum spanning forest, as arcs between the vertices of the graph
+	 *
+	 * @param graph Graph
+	 * @return Array list of all arcs in the forest - sequence of arcs is irrelevant
+	 */
+	public ArrayList<PartialTree.Arc> execute(CompactGraph graph) {
+		return MstEngines.execute(this, graph);
+	}
+
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java apps.BoruvkaMst graphfile [threads]");
+			System.exit(1);
+		}
+		CompactGraph graph = new CompactGraph(args[0]);
+		BoruvkaMst engine = args.length > 1 ? new BoruvkaMst(Integer.parseInt(args[1])) : new BoruvkaMst();
+		ArrayList<PartialTree.Arc> mst = engine.execute(graph);
+		for (PartialTree.Arc arc: mst) {
+			System.out.println(arc);
+		}
+	}
+}
@@ -0,0 +1,535 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import structures.*;
+
+/**
+ * Keeps a minimum spanning forest of a graph up to date while edges are inserted,
+ * deleted and reweighted, without rebuilding it. Every edge has an id, given by the
+ * order the edges of the seed graph are in (one per pair of arcs) and then by
+ * insertEdge. The forest can be read at any point.
+ * <p>
+ * An update only looks at the tree it touches:
+ * <ul>
+ * <li>A new or lighter edge between two trees joins them. Between two vertices of one
+ *     tree, it replaces the heaviest edge on the tree path between them, if that edge is
+ *     heavier; the path is found by a search from one end that stops at the other.</li>
+ * <li>A deleted or heavier tree edge splits its tree in two. The two sides are searched
+ *     in turns, so the search stops as soon as the smaller side is done, and only the
+ *     edges of the smaller side are scanned for the lightest one back to the other side.</li>
+ * </ul>
+ * So a deletion costs time in proportion to the size and degree of the smaller side,
+ * and an insertion in proportion to the part of the tree searched, rather than m log m
+ * for a rebuild.
+ */
+public class DynamicMst {
+
+	/**
+	 * Edge lists of every vertex, with constant time removal: every edge knows its place
+	 * in the lists of both of its ends
+	 */
+	private static class Lists {
+		int[][] lists;
+		int[] sizes;
+
+		/**
+		 * Place of every edge in the list of its from end, and of its to end
+		 */
+		int[] slotFrom = new int[16], slotTo = new int[16];
+
+		Lists(int n) {
+			lists = new int[n][];
+			sizes = new int[n];
+		}
+
+		void add(int v, int edge, boolean fromEnd) {
+			if (lists[v] == null) {
+				lists[v] = new int[4];
+			} else if (sizes[v] == lists[v].length) {
+				lists[v] = Arrays.copyOf(lists[v], sizes[v] * 2);
+			}
+			if (edge >= slotFrom.length) {
+				slotFrom = Arrays.copyOf(slotFrom, Math.max(edge + 1, slotFrom.length * 2));
+				slotTo = Arrays.copyOf(slotTo, slotFrom.length);
+			}
+			(fromEnd ? slotFrom : slotTo)[edge] = sizes[v];
+			lists[v][sizes[v]++] = edge;
+		}
+
+		void remove(int v, int edge, boolean fromEnd, int[] from) {
+			int slot = (fromEnd ? slotFrom : slotTo)[edge];
+			int end = --sizes[v];
+			if (slot == end) {
+				return;
+			}
+			int last = lists[v][end];
+			lists[v][slot] = last;
+			// the moved entry is the from end of last if that is where it was, unless it is
+			// the other end of a loop whose from end is the one being removed
+			if (from[last] == v && slotFrom[last] == end && !(last == edge && fromEnd)) {
+				slotFrom[last] = slot;
+			} else {
+				slotTo[last] = slot;
+			}
+		}
+	}
+
+	private int n;
+
+	/**
+	 * Ends and weight of every edge, by id
+	 */
+	private int[] from, to, weight;
+
+	/**
+	 * Whether every edge is still in the graph, and whether it is in the forest
+	 */
+	private boolean[] alive, inTree;
+
+	private int edgeCount;
+
+	/**
+	 * Every live edge, and the forest edges only, by vertex
+	 */
+	private Lists all, tree;
+
+	private int treeSize;
+	private long treeWeight;
+
+	private Vertex[] vertices;
+
+	/**
+	 * Scratch space of the searches: a vertex is marked when mark[v] equals the stamp of
+	 * the current search, so nothing has to be cleared between searches
+	 */
+	private int[] mark, parentEdge, queue, queue2;
+	private int stamp;
+
+	/**
+	 * Starts with the given graph and a minimum spanning forest of it, found by the engine
+	 * MstEngines.select picks
+	 *
+	 * @param graph Graph
+	 */
+	public DynamicMst(CompactGraph graph) {
+		this(graph, MstEngines.select(graph).findArcs(graph));
+	}
+
+	/**
+	 * Starts with the given graph and minimum spanning forest, as an engine found it
+	 *
+	 * @param graph Graph
+	 * @param treeArcs Arc indexes of a minimum spanning forest of graph
+	 * @throws IllegalArgumentException If treeArcs are not a forest of graph
+	 */
+	public DynamicMst(CompactGraph graph, int[] treeArcs)
+	throws IllegalArgumentException {
+		n = graph.vertexCount();
+		vertices = graph.getVertices();
+		int m = graph.arcCount() / 2;
+		from = new int[Math.max(m, 16)];
+		to = new int[from.length];
+		weight = new int[from.length];
+		alive = new boolean[from.length];
+		inTree = new boolean[from.length];
+		all = new Lists(n);
+		tree = new Lists(n);
+		mark = new int[n];
+		parentEdge = new int[n];
+		queue = new int[n];
+		queue2 = new int[n];
+
+		for (int v=0; v < n; v++) {
+			int loops = 0;
+			for (int e=graph.offsets[v]; e < graph.offsets[v+1]; e++) {
+				int u = graph.targets[e];
+				// one edge per pair of arcs: the arc out of the lower end, or every other loop
+				if (u > v || (u == v && (loops++ & 1) == 0)) {
+					addEdge(v, u, graph.weights[e]);
+				}
+			}
+		}
+
+		DisjointSet sets = new DisjointSet(n);
+		for (int e: treeArcs) {
+			int v = MstEngines.source(graph, e), u = graph.targets[e];
+			if (!sets.union(v, u)) {
+				throw new IllegalArgumentException("tree arcs have a cycle");
+			}
+			int edge = findEdge(v, u, graph.weights[e]);
+			if (edge < 0) {
+				throw new IllegalArgumentException("no edge for arc " + e);
+			}
+			link(edge);
+		}
+	}
+
+	/**
+	 * Finds a live edge between v and u of the given weight that is not in the forest
+	 */
+	private int findEdge(int v, int u, int w) {
+		for (int i=0; i < all.sizes[v]; i++) {
+			int edge = all.lists[v][i];
+			if (!inTree[edge] && weight[edge] == w && other(edge, v) == u) {
+				return edge;
+			}
+		}
+		return -1;
+	}
+
+	private int other(int edge, int v) {
+		return from[edge] == v ? to[edge] : from[edge];
+	}
+
+	private int addEdge(int v, int u, int w) {
+		if (edgeCount == from.length) {
+			int cap = edgeCount * 2;
+			from = Arrays.copyOf(from, cap);
+			to = Arrays.copyOf(to, cap);
+			weight = Arrays.copyOf(weight, cap);
+			alive = Arrays.copyOf(alive, cap);
+			inTree = Arrays.copyOf(inTree, cap);
+		}
+		int edge = edgeCount++;
+		from[edge] = v;
+		to[edge] = u;
+		weight[edge] = w;
+		alive[edge] = true;
+		all.add(v, edge, true);
+		all.add(u, edge, false);
+		return edge;
+	}
+
+	/**
+	 * Puts an edge into the forest
+	 */
+	private void link(int edge) {
+		inTree[edge] = true;
+		tree.add(from[edge], edge, true);
+		tree.add(to[edge], edge, false);
+		treeSize++;
+		treeWeight += weight[edge];
+	}
+
+	/**
+	 * Takes an edge out of the forest
+	 */
+	private void cut(int edge) {
+		inTree[edge] = false;
+		tree.remove(from[edge], edge, true, from);
+		tree.remove(to[edge], edge, false, from);
+		treeSize--;
+		treeWeight -= weight[edge];
+	}
+
+	private void checkVertex(int v)
+	throws IllegalArgumentException {
+		if (v < 0 || v >= n) {
+			throw new IllegalArgumentException("no vertex " + v);
+		}
+	}
+
+	private void checkEdge(int edge)
+	throws IllegalArgumentException {
+		if (edge < 0 || edge >= edgeCount || !alive[edge]) {
+			throw new IllegalArgumentException("no edge " + edge);
+		}
+	}
+
+	/**
+	 * Adds an edge to the graph, and to the forest if it belongs there
+	 *
+	 * @param v Vertex at one end
+	 * @param u Vertex at the other end
+	 * @param w Weight
+	 * @return Id of the new edge
+	 * @throws IllegalArgumentException If v or u is not a vertex
+	 */
+	public int insertEdge(int v, int u, int w)
+	throws IllegalArgumentException {
+		checkVertex(v);
+		checkVertex(u);
+		int edge = addEdge(v, u, w);
+		offer(edge);
+		return edge;
+	}
+
+	/**
+	 * Removes an edge from the graph. If it was in the forest, the lightest edge that
+	 * joins the two parts again, if there is one, takes its place.
+	 *
+	 * @param edge Id of the edge
+	 * @throws IllegalArgumentException If there is no such edge
+	 */
+	public void deleteEdge(int edge)
+	throws IllegalArgumentException {
+		checkEdge(edge);
+		alive[edge] = false;
+		all.remove(from[edge], edge, true, from);
+		all.remove(to[edge], edge, false, from);
+		if (inTree[edge]) {
+			cut(edge);
+			reconnect(from[edge], to[edge]);
+		}
+	}
+
+	/**
+	 * Changes the weight of an edge, and the forest to match
+	 *
+	 * @param edge Id of the edge
+	 * @param w New weight
+	 * @throws IllegalArgumentException If there is no such edge
+	 */
+	public void updateWeight(int edge, int w)
+	throws IllegalArgumentException {
+		checkEdge(edge);
+		int old = weight[edge];
+		if (inTree[edge]) {
+			treeWeight += (long)w - old;
+			weight[edge] = w;
+			if (w > old) {
+				// some other edge between the two sides may now be lighter
+				cut(edge);
+				reconnect(from[edge], to[edge]);
+			}
+		} else {
+			weight[edge] = w;
+			if (w < old) {
+				offer(edge);
+			}
+		}
+	}
+
+	/**
+	 * Puts a live edge that is not in the forest into it, if it is lighter than the
+	 * heaviest edge on the tree path between its ends, or if there is no such path
+	 */
+	private void offer(int edge) {
+		int v = from[edge], u = to[edge];
+		if (v == u) {
+			return;
+		}
+		int max = pathMax(v, u);
+		if (max == -2) {
+			link(edge);
+		} else if (weight[max] > weight[edge]) {
+			cut(max);
+			link(edge);
+		}
+	}
+
+	/**
+	 * Returns a stamp no vertex is marked with yet
+	 */
+	private int newStamp() {
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(mark, 0);
+			stamp = 0;
+		}
+		return ++stamp;
+	}
+
+	/**
+	 * Finds the heaviest edge on the forest path between two vertices
+	 *
+	 * @return Edge id, or -2 if the vertices are in different trees
+	 */
+	private int pathMax(int v, int u) {
+		int s = newStamp();
+		mark[v] = s;
+		parentEdge[v] = -1;
+		int head = 0, tail = 0;
+		queue[tail++] = v;
+		while (head < tail && mark[u] != s) {
+			int x = queue[head++];
+			for (int i=0; i < tree.sizes[x]; i++) {
+				int edge = tree.lists[x][i];
+				int y = other(edge, x);
+				if (mark[y] != s) {
+					mark[y] = s;
+					parentEdge[y] = edge;
+					queue[tail++] = y;
+				}
+			}
+		}
+		if (mark[u] != s) {
+			return -2;
+		}
+		int max = -1;
+		for (int x=u; x != v; x=other(parentEdge[x], x)) {
+			int edge = parentEdge[x];
+			if (max < 0 || weight[edge] > weight[max]) {
+				max = edge;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Joins the two trees of a and b, just split, by the lightest live edge between them,
+	 * if there is one. The two trees are searched in turns, and the one that runs out
+	 * first is the smaller side, whose edges are then scanned.
+	 */
+	private void reconnect(int a, int b) {
+		int sa = newStamp(), sb = newStamp();
+		mark[a] = sa;
+		mark[b] = sb;
+		int headA = 0, tailA = 0, headB = 0, tailB = 0;
+		queue[tailA++] = a;
+		queue2[tailB++] = b;
+		while (headA < tailA && headB < tailB) {
+			tailA = step(queue, headA++, tailA, sa);
+			tailB = step(queue2, headB++, tailB, sb);
+		}
+		int[] side = headA == tailA ? queue : queue2;
+		int sideSize = headA == tailA ? tailA : tailB;
+		int sideStamp = headA == tailA ? sa : sb;
+
+		int best = -1;
+		for (int i=0; i < sideSize; i++) {
+			int x = side[i];
+			for (int j=0; j < all.sizes[x]; j++) {
+				int edge = all.lists[x][j];
+				if (!inTree[edge] && mark[other(edge, x)] != sideStamp
+						&& (best < 0 || weight[edge] < weight[best])) {
+					best = edge;
+				}
+			}
+		}
+		// a non-tree edge never leaves its tree, so best goes to the other side
+		if (best >= 0) {
+			link(best);
+		}
+	}
+
+	/**
+	 * Expands one vertex of a search over the forest
+	 *
+	 * @return New tail of the queue
+	 */
+	private int step(int[] q, int head, int tail, int s) {
+		int x = q[head];
+		for (int i=0; i < tree.sizes[x]; i++) {
+			int y = other(tree.lists[x][i], x);
+			if (mark[y] != s) {
+				mark[y] = s;
+				q[tail++] = y;
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Returns the number of vertices
+	 *
+	 * @return Number of vertices
+	 */
+	public int vertexCount() {
+		return n;
+	}
+
+	/**
+	 * Returns the number of edges in the forest
+	 *
+	 * @return Number of forest edges
+	 */
+	public int getTreeSize() {
+		return treeSize;
+	}
+
+	/**
+	 * Returns the total weight of the forest
+	 *
+	 * @return Weight
+	 */
+	public long getWeight() {
+		return treeWeight;
+	}
+
+	/**
+	 * Tells if an edge is in the forest
+	 *
+	 * @param edge Id of the edge
+	 * @return True if it is, false otherwise
+	 * @throws IllegalArgumentException If there is no such edge
+	 */
+	public boolean inTree(int edge)
+	throws IllegalArgumentException {
+		checkEdge(edge);
+		return inTree[edge];
+	}
+
+	/**
+	 * Returns the vertex at the from end of an edge (the first vertex of insertEdge)
+	 *
+	 * @param edge Id of the edge
+	 * @return Vertex number
+	 * @throws IllegalArgumentException If there is no such edge
+	 */
+	public int from(int edge)
+	throws IllegalArgumentException {
+		checkEdge(edge);
+		return from[edge];
+	}
+
+	/**
+	 * Returns the vertex at the to end of an edge
+	 *
+	 * @param edge Id of the edge
+	 * @return Vertex number
+	 * @throws IllegalArgumentException If there is no such edge
+	 */
+	public int to(int edge)
+	throws IllegalArgumentException {
+		checkEdge(edge);
+		return to[edge];
+	}
+
+	/**
+	 * Returns the weight of an edge
+	 *
+	 * @param edge Id of the edge
+	 * @return Weight
+	 * @throws IllegalArgumentException If there is no such edge
+	 */
+	public int weight(int edge)
+	throws IllegalArgumentException {
+		checkEdge(edge);
+		return weight[edge];
+	}
+
+	/**
+	 * Returns the ids of the edges in the forest
+	 *
+	 * @return Edge ids, in no particular order
+	 */
+	public int[] getTreeEdges() {
+		int[] edges = new int[treeSize];
+		int k = 0;
+		for (int v=0; v < n; v++) {
+			for (int i=0; i < tree.sizes[v]; i++) {
+				int edge = tree.lists[v][i];
+				if (from[edge] == v) {
+					edges[k++] = edge;
+				}
+			}
+		}
+		return edges;
+	}
+
+	/**
+	 * Returns the forest as arcs between the vertices of the graph, in the form
+	 * MST.execute returns
+	 *
+	 * @return Array list of all arcs in the forest - sequence of arcs is irrelevant
+	 */
+	public ArrayList<PartialTree.Arc> getTree() {
+		ArrayList<PartialTree.Arc> arcs = new ArrayList<PartialTree.Arc>(treeSize);
+		for (int edge: getTreeEdges()) {
+			arcs.add(new PartialTree.Arc(vertices[from[edge]], vertices[to[edge]], weight[edge]));
+		}
+		return arcs;
+	}
+}
@@ -0,0 +1,484 @@
+package apps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import structures.*;
+
+/**
+ * Kruskal's algorithm for edge lists too large for memory. The edges are streamed from a
+ * memory-mapped binary edge file, sorted by weight in runs that fit the memory budget,
+ * written to temporary files, and merged back, k runs at a time, into one weight-ordered
+ * stream that goes through a DisjointSet over the vertex ids. The memory used is the
+ * budget, plus the union-find (5 bytes per vertex), plus the tree, which is written to an
+ * output edge file as it is found. Usage:
+ * <pre>
+ *     java apps.ExternalKruskalMst edgefile outfile [budgetMB [tmpdir]]
+ *     java apps.ExternalKruskalMst -convert graphfile edgefile
+ * </pre>
+ * The second form converts a graph in the text format of Graph into an edge file.
+ * <p>
+ * An edge file is big-endian: the int MAGIC, the int number of vertices, the long number
+ * of edges, and then 12 bytes per edge: the ints from, to and weight. Vertices are
+ * numbered 0 to n-1, in the order of the text format.
+ */
+public class ExternalKruskalMst {
+
+	/**
+	 * First 4 bytes of an edge file ("MSTE")
+	 */
+	public static final int MAGIC = 0x4D535445;
+
+	/**
+	 * Bytes of the header of an edge file
+	 */
+	public static final int HEADER = 16;
+
+	/**
+	 * Bytes of one edge
+	 */
+	public static final int EDGE = 12;
+
+	/**
+	 * Bytes of memory per edge while a run is sorted: a sort key and the two ends
+	 */
+	static final int SORT_BYTES = 16;
+
+	/**
+	 * Buffer size for every file read or written
+	 */
+	static final int BUFFER = 1 << 16;
+
+	/**
+	 * Bytes of the input mapped at a time: a whole number of edges, under 1 GB
+	 */
+	static final long WINDOW = (1L << 30) / EDGE * EDGE;
+
+	private long budget;
+	private File tmpdir;
+
+	/**
+	 * Result of a run
+	 */
+	public static class Result {
+		/**
+		 * Number of vertices and of edges read
+		 */
+		public int vertices;
+		public long edges;
+
+		/**
+		 * Number of edges in the spanning forest, and their total weight
+		 */
+		public int treeEdges;
+		public long weight;
+
+		/**
+		 * Number of sorted runs, and of merge passes before the last one
+		 */
+		public int runs;
+		public int passes;
+	}
+
+	/**
+	 * Initializes this engine with the given memory budget, and temporary files in the
+	 * default temporary directory
+	 *
+	 * @param budget Bytes of memory for sorting and merging, at least 1 MB
+	 * @throws IllegalArgumentException If budget is less than 1 MB
+	 */
+	public ExternalKruskalMst(long budget)
+	throws IllegalArgumentException {
+		this(budget, null);
+	}
+
+	/**
+	 * Initializes this engine with the given memory budget and temporary directory
+	 *
+	 * @param budget Bytes of memory for sorting and merging, at least 1 MB
+	 * @param tmpdir Directory for the sorted runs, or null for the default
+	 * @throws IllegalArgumentException If budget is less than 1 MB
+	 */
+	public ExternalKruskalMst(long budget, File tmpdir)
+	throws IllegalArgumentException {
+		if (budget < (1 << 20)) {
+			throw new IllegalArgumentException("budget must be at least 1 MB");
+		}
+		this.budget = budget;
+		this.tmpdir = tmpdir;
+	}
+
+	/**
+	 * Finds a minimum spanning forest of the graph in an edge file
+	 *
+	 * @param edgeFile Edge file of the graph
+	 * @param outFile Edge file to write the forest to
+	 * @return What was done
+	 * @throws IOException If a file can't be read or written, or edgeFile is not an edge file
+	 * @throws IllegalArgumentException If the union-find of the vertices would not fit the budget
+	 */
+	public Result execute(File edgeFile, File outFile)
+	throws IOException, IllegalArgumentException {
+		Result result = new Result();
+		ArrayList<File> runs = new ArrayList<File>();
+		try {
+			sortRuns(edgeFile, result, runs);
+			result.runs = runs.size();
+			int fanIn = (int)Math.max(2, Math.min(budget / (2L * BUFFER), Integer.MAX_VALUE));
+			while (runs.size() > fanIn) {
+				ArrayList<File> merged = new ArrayList<File>();
+				for (int i=0; i < runs.size(); i += fanIn) {
+					File run = tempFile();
+					merged.add(run);
+					DataOutputStream out = output(run);
+					try {
+						merge(runs.subList(i, Math.min(i + fanIn, runs.size())), out, null, null);
+					} finally {
+						out.close();
+					}
+				}
+				delete(runs);
+				runs = merged;
+				result.passes++;
+			}
+
+			DataOutputStream out = output(outFile);
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(result.vertices);
+				out.writeLong(0);
+				merge(runs, out, new DisjointSet(result.vertices), result);
+			} finally {
+				out.close();
+			}
+			// now that the count is known, fill it in
+			RandomAccessFile raf = new RandomAccessFile(outFile, "rw");
+			try {
+				raf.seek(8);
+				raf.writeLong(result.treeEdges);
+			} finally {
+				raf.close();
+			}
+		} finally {
+			delete(runs);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the edge file through memory-mapped windows, and writes its edges in sorted
+	 * runs, each as large as the budget allows
+	 */
+	private void sortRuns(File edgeFile, Result result, ArrayList<File> runs)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(edgeFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < HEADER) {
+				throw new IOException(edgeFile + ": not an edge file");
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(edgeFile + ": not an edge file");
+			}
+			int n = header.getInt();
+			long m = header.getLong();
+			if (n < 0 || m < 0 || length < HEADER + m * EDGE) {
+				throw new IOException(edgeFile + ": truncated or bad header");
+			}
+			// the union-find of the merge needs its memory too, but not at the same time
+			if ((long)n * 5 > budget) {
+				throw new IllegalArgumentException("budget too small for the union-find of " + n + " vertices");
+			}
+			result.vertices = n;
+			result.edges = m;
+
+			int capacity = (int)Math.max(1, Math.min(Math.min(budget / SORT_BYTES, m), Integer.MAX_VALUE - 8));
+			long[] keys = new long[capacity];
+			int[] from = new int[capacity], to = new int[capacity];
+			int count = 0;
+			long pos = HEADER, end = HEADER + m * EDGE;
+			while (pos < end) {
+				long size = Math.min(WINDOW, end - pos);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+				for (long i=0; i < size; i += EDGE) {
+					int v1 = window.getInt(), v2 = window.getInt(), weight = window.getInt();
+					if (v1 < 0 || v1 >= n || v2 < 0 || v2 >= n) {
+						throw new IOException(edgeFile + ": edge " + (pos - HEADER + i) / EDGE + " has a vertex out of range");
+					}
+					keys[count] = ((long)weight << 32) | count;
+					from[count] = v1;
+					to[count] = v2;
+					if (++count == capacity) {
+						runs.add(writeRun(keys, from, to, count));
+						count = 0;
+					}
+				}
+				pos += size;
+			}
+			if (count > 0) {
+				runs.add(writeRun(keys, from, to, count));
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Sorts the first count edges and writes them to a new temporary file
+	 */
+	private File writeRun(long[] keys, int[] from, int[] to, int count)
+	throws IOException {
+		Arrays.parallelSort(keys, 0, count);
+		File run = tempFile();
+		DataOutputStream out = output(run);
+		try {
+			for (int i=0; i < count; i++) {
+				int e = (int)keys[i];
+				out.writeInt(from[e]);
+				out.writeInt(to[e]);
+				out.writeInt((int)(keys[i] >> 32));
+			}
+		} finally {
+			out.close();
+		}
+		return run;
+	}
+
+	/**
+	 * Merges sorted runs. Without a union-find, every edge is written to out; with one,
+	 * only the edges that join two trees are, and the merge stops when the forest has n-1
+	 * edges.
+	 */
+	private void merge(List<File> runs, DataOutputStream out, DisjointSet sets, Result result)
+	throws IOException {
+		int k = runs.size();
+		DataInputStream[] in = new DataInputStream[k];
+		int[] from = new int[k], to = new int[k];
+		IndexedMinHeap heap = new IndexedMinHeap(k);
+		try {
+			for (int i=0; i < k; i++) {
+				in[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), BUFFER));
+				next(in, i, from, to, heap);
+			}
+			int target = sets == null ? -1 : Math.max(sets.size() - 1, 0);
+			while (!heap.isEmpty()) {
+				int i = heap.getMin();
+				int weight = (int)heap.getMinKey();
+				if (sets == null) {
+					out.writeInt(from[i]);
+					out.writeInt(to[i]);
+					out.writeInt(weight);
+				} else if (sets.union(from[i], to[i])) {
+					out.writeInt(from[i]);
+					out.writeInt(to[i]);
+					out.writeInt(weight);
+					result.treeEdges++;
+					result.weight += weight;
+					if (result.treeEdges == target) {
+						break;
+					}
+				}
+				heap.deleteMin();
+				next(in, i, from, to, heap);
+			}
+		} finally {
+			for (DataInputStream stream: in) {
+				if (stream != null) {
+					stream.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the next edge of run i into from, to and the heap, if there is one
+	 */
+	private static void next(DataInputStream[] in, int i, int[] from, int[] to, IndexedMinHeap heap)
+	throws IOException {
+		int v1;
+		try {
+			v1 = in[i].readInt();
+		} catch (EOFException e) {
+			return;
+		}
+		from[i] = v1;
+		to[i] = in[i].readInt();
+		heap.insert(i, in[i].readInt());
+	}
+
+	private File tempFile()
+	throws IOException {
+		File file = File.createTempFile("mstrun", ".bin", tmpdir);
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static DataOutputStream output(File file)
+	throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER));
+	}
+
+	private static void delete(ArrayList<File> files) {
+		for (File file: files) {
+			file.delete();
+		}
+		files.clear();
+	}
+
+	/**
+	 * Writes every edge of a graph, once, to an edge file
+	 *
+	 * @param graph Graph
+	 * @param file Edge file to write
+	 * @throws IOException If the file can't be written
+	 */
+	public static void writeEdgeFile(CompactGraph graph, File file)
+	throws IOException {
+		int n = graph.vertexCount();
+		long m = 0;
+		for (int v=0; v < n; v++) {
+			int loops = 0;
+			for (int e=graph.offsets[v]; e < graph.offsets[v+1]; e++) {
+				int u = graph.targets[e];
+				if (first(u, v, u == v ? loops++ : 0)) {
+					m++;
+				}
+			}
+		}
+		DataOutputStream out = output(file);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(n);
+			out.writeLong(m);
+			for (int v=0; v < n; v++) {
+				int loops = 0;
+				for (int e=graph.offsets[v]; e < graph.offsets[v+1]; e++) {
+					int u = graph.targets[e];
+					if (first(u, v, u == v ? loops++ : 0)) {
+						out.writeInt(v);
+						out.writeInt(u);
+						out.writeInt(graph.weights[e]);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Tells if an arc from v to u is the one of its edge that goes in the edge file: the
+	 * arc out of the lower numbered end, or, for a loop, the first of its two arcs, which
+	 * are next to each other among the loops of v
+	 *
+	 * @param loop Number of loops at v before this arc
+	 */
+	private static boolean first(int u, int v, int loop) {
+		return u > v || (u == v && (loop & 1) == 0);
+	}
+
+	/**
+	 * Converts a graph in the text format of Graph to an edge file, streaming the edges
+	 *
+	 * @param graphFile Name of the text file
+	 * @param edgeFile Edge file to write
+	 * @throws IOException If a file can't be read or written, or the text is not a graph
+	 */
+	public static void convert(String graphFile, File edgeFile)
+	throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(graphFile), BUFFER);
+		DataOutputStream out = output(edgeFile);
+		long m = 0;
+		int n;
+		try {
+			StringTokenizer st = tokens(br, null);
+			n = Integer.parseInt(st.nextToken());
+			HashMap<String,Integer> vertmap = new HashMap<String,Integer>(n, 2f);
+			for (int v=0; v < n; v++) {
+				st = tokens(br, st);
+				vertmap.put(st.nextToken(), v);
+			}
+			out.writeInt(MAGIC);
+			out.writeInt(n);
+			out.writeLong(0);
+			while ((st = tokens(br, st)) != null) {
+				Integer v1 = vertmap.get(st.nextToken());
+				st = tokens(br, st);
+				Integer v2 = st == null ? null : vertmap.get(st.nextToken());
+				st = tokens(br, st);
+				if (v1 == null || v2 == null || st == null) {
+					throw new IOException(graphFile + ": bad edge " + (m+1));
+				}
+				out.writeInt(v1);
+				out.writeInt(v2);
+				out.writeInt(Integer.parseInt(st.nextToken()));
+				m++;
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException(graphFile + ": " + e.getMessage());
+		} finally {
+			br.close();
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(edgeFile, "rw");
+		try {
+			raf.seek(8);
+			raf.writeLong(m);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns a tokenizer with a token left, reading lines as needed, or null at the end
+	 */
+	private static StringTokenizer tokens(BufferedReader br, StringTokenizer st)
+	throws IOException {
+		while (st == null || !st.hasMoreTokens()) {
+			String line = br.readLine();
+			if (line == null) {
+				return null;
+			}
+			st = new StringTokenizer(line);
+		}
+		return st;
+	}
+
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length == 3 && args[0].equals("-convert")) {
+			convert(args[1], new File(args[2]));
+			return;
+		}
+		if (args.length < 2 || args.length > 4) {
+			System.err.println("Usage: java apps.ExternalKruskalMst edgefile outfile [budgetMB [tmpdir]]");
+			System.err.println("       java apps.ExternalKruskalMst -convert graphfile edgefile");
+			System.exit(1);
+		}
+		long budget = (args.length > 2 ? Long.parseLong(args[2]) : 64) << 20;
+		File tmpdir = args.length > 3 ? new File(args[3]) : null;
+		long start = System.nanoTime();
+		Result r = new ExternalKruskalMst(budget, tmpdir).execute(new File(args[0]), new File(args[1]));
+		System.out.printf("%d vertices, %d edges, %d runs, %d merge passes: %d tree edges, weight %d, %.1f ms%n",
+				r.vertices, r.edges, r.runs, r.passes, r.treeEdges, r.weight, (System.nanoTime() - start) / 1e6);
+	}
+}
@@ -0,0 +1,134 @@
+package apps;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import structures.*;
+
+/**
+ * Filter-Kruskal (Osipov, Sanders and Singler): like quicksort, splits the edges around a
+ * random pivot and solves the light part first. Before the heavy part is split in turn,
+ * it is filtered: every edge whose ends are already in one tree is dropped. In a dense
+ * graph the tree is made of light edges, so most heavy edges are dropped without ever
+ * being sorted. Parts of at most THRESHOLD edges are sorted and scanned as in Kruskal.
+ */
+public class FilterKruskalMst implements MstAlgorithm {
+
+	/**
+	 * Largest part that is sorted outright instead of split
+	 */
+	static final int THRESHOLD = 1 << 12;
+
+	/**
+	 * State of one run
+	 */
+	private static class Run {
+		CompactGraph graph;
+		KruskalMst.Edges edges;
+		DisjointSet sets;
+		int[] tree;
+		int size;
+		Random random = new Random(0);
+
+		boolean done() {
+			return size == tree.length;
+		}
+
+		int from(long key) {
+			return edges.from[KruskalMst.Edges.edge(key)];
+		}
+
+		int to(long key) {
+			return graph.targets[edges.arc[KruskalMst.Edges.edge(key)]];
+		}
+	}
+
+	public String getName() {
+		return "filter-kruskal";
+	}
+
+	public int[] findArcs(CompactGraph graph) {
+		Run run = new Run();
+		run.graph = graph;
+		run.edges = new KruskalMst.Edges(graph);
+		int n = graph.vertexCount();
+		run.sets = new DisjointSet(n);
+		run.tree = new int[Math.max(n-1, 0)];
+		filterKruskal(run, 0, run.edges.count);
+		return Arrays.copyOf(run.tree, run.size);
+	}
+
+	/**
+	 * Adds to the tree the edges of keys[lo..hi-1] that belong in it. All lighter edges
+	 * must have been handled already.
+	 */
+	private static void filterKruskal(Run run, int lo, int hi) {
+		long[] keys = run.edges.keys;
+		// loops on the heavy part, so the recursion only goes as deep as the light parts
+		while (!run.done() && lo < hi) {
+			if (hi - lo <= THRESHOLD) {
+				Arrays.sort(keys, lo, hi);
+				kruskal(run, lo, hi);
+				return;
+			}
+			long pivot = keys[lo + run.random.nextInt(hi - lo)];
+			int mid = partition(keys, lo, hi, pivot);
+			filterKruskal(run, lo, mid);
+			lo = filter(run, mid, hi);
+		}
+	}
+
+	/**
+	 * Moves the keys of keys[lo..hi-1] that are less than pivot to the front. The pivot
+	 * itself stays behind, so the back part is never empty.
+	 *
+	 * @return Index of the first key no less than pivot
+	 */
+	private static int partition(long[] keys, int lo, int hi, long pivot) {
+		int i = lo, j = hi - 1;
+		while (true) {
+			while (i <= j && keys[i] < pivot) {
+				i++;
+			}
+			while (i <= j && keys[j] >= pivot) {
+				j--;
+			}
+			if (i >= j) {
+				return i;
+			}
+			long temp = keys[i];
+			keys[i] = keys[j];
+			keys[j] = temp;
+		}
+	}
+
+	/**
+	 * Drops the edges of keys[lo..hi-1] whose ends are already in one tree, by moving the
+	 * others to the back of the range
+	 *
+	 * @return Index of the first edge kept
+	 */
+	private static int filter(Run run, int lo, int hi) {
+		long[] keys = run.edges.keys;
+		int keep = hi;
+		for (int i=hi-1; i >= lo; i--) {
+			long key = keys[i];
+			if (run.sets.find(run.from(key)) != run.sets.find(run.to(key))) {
+				keys[--keep] = key;
+			}
+		}
+		return keep;
+	}
+
+	/**
+	 * Scans sorted keys[lo..hi-1] lightest first, as in Kruskal's algorithm
+	 */
+	private static void kruskal(Run run, int lo, int hi) {
+		long[] keys = run.edges.keys;
+		for (int i=lo; i < hi && !run.done(); i++) {
+			if (run.sets.union(run.from(keys[i]), run.to(keys[i]))) {
+				run.tree[run.size++] = run.edges.arc[KruskalMst.Edges.edge(keys[i])];
+			}
+		}
+	}
+}
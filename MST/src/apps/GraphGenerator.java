@@ -0,0 +1,352 @@
+package apps;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates connected graphs in the text format of Graph: the vertex count, the names
+ * v0, v1, ... one per line, and then one edge per line. Four shapes can be made:
+ * <ul>
+ * <li>random: a random tree through all n vertices, plus random edges up to m in all</li>
+ * <li>grid: a rows by cols lattice, every vertex joined to the one right of it and the
+ *     one below it</li>
+ * <li>power: preferential attachment, where every new vertex is joined to k earlier
+ *     ones picked with chance proportional to their degree, so a few vertices end up
+ *     with most of the edges</li>
+ * <li>complete: every pair of n vertices</li>
+ * </ul>
+ * The weights follow one of four distributions: uniform from 1 to max, constant max,
+ * exponential (mostly light, with mean about max/10, capped at max), or ties (1 to 4, so
+ * almost every edge ties with many others). The output depends only on the seed and the
+ * settings. Usage:
+ * <pre>
+ *     java apps.GraphGenerator seed distribution maxWeight outfile shape arg ...
+ * </pre>
+ * where shape and args are random n m, grid rows cols, power n k, or complete n.
+ */
+public class GraphGenerator {
+
+	/**
+	 * Names of the weight distributions
+	 */
+	public static final String[] DISTRIBUTIONS = {
+		"uniform", "constant", "exponential", "ties"
+	};
+
+	private long seed;
+	private String shape = "random";
+	private int n = 9;
+	private long param = 14;
+	private String distribution = "uniform";
+	private int maxWeight = 1000;
+
+	private Random random;
+
+	/**
+	 * Initializes this generator with the given seed, set to make a random graph about
+	 * the size of graph1.txt with uniform weights up to 1000
+	 *
+	 * @param seed Seed of the random choices
+	 */
+	public GraphGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the shape to a random graph
+	 *
+	 * @param n Number of vertices, at least 1
+	 * @param m Number of edges, from n-1 up, and 0 if n is 1 since there are no loops
+	 * @throws IllegalArgumentException If a count is out of range
+	 */
+	public void setRandom(int n, long m)
+	throws IllegalArgumentException {
+		if (n < 1 || m < n-1 || (n == 1 && m > 0)) {
+			throw new IllegalArgumentException("bad random graph size");
+		}
+		set("random", n, m);
+	}
+
+	/**
+	 * Sets the shape to a grid
+	 *
+	 * @param rows Number of rows, at least 1
+	 * @param cols Number of columns, at least 1
+	 * @throws IllegalArgumentException If a count is out of range, or there would be more
+	 *         than Integer.MAX_VALUE vertices
+	 */
+	public void setGrid(int rows, int cols)
+	throws IllegalArgumentException {
+		if (rows < 1 || cols < 1 || (long)rows * cols > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("bad grid size");
+		}
+		set("grid", rows * cols, cols);
+	}
+
+	/**
+	 * Sets the shape to a preferential attachment graph
+	 *
+	 * @param n Number of vertices, at least 1
+	 * @param k Number of earlier vertices every new vertex is joined to, at least 1
+	 * @throws IllegalArgumentException If a count is out of range
+	 */
+	public void setPowerLaw(int n, int k)
+	throws IllegalArgumentException {
+		if (n < 1 || k < 1) {
+			throw new IllegalArgumentException("bad power law graph size");
+		}
+		set("power", n, k);
+	}
+
+	/**
+	 * Sets the shape to a complete graph
+	 *
+	 * @param n Number of vertices, at least 1
+	 * @throws IllegalArgumentException If n is less than 1
+	 */
+	public void setComplete(int n)
+	throws IllegalArgumentException {
+		if (n < 1) {
+			throw new IllegalArgumentException("bad complete graph size");
+		}
+		set("complete", n, 0);
+	}
+
+	private void set(String shape, int n, long param) {
+		this.shape = shape;
+		this.n = n;
+		this.param = param;
+	}
+
+	/**
+	 * Sets the distribution of the weights
+	 *
+	 * @param distribution One of the names in DISTRIBUTIONS
+	 * @param maxWeight Greatest weight, at least 1
+	 * @throws IllegalArgumentException If there is no such distribution, or maxWeight is
+	 *         less than 1
+	 */
+	public void setWeights(String distribution, int maxWeight)
+	throws IllegalArgumentException {
+		boolean found = false;
+		for (String d: DISTRIBUTIONS) {
+			found |= d.equals(distribution);
+		}
+		if (!found) {
+			throw new IllegalArgumentException("no distribution " + distribution);
+		}
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("max weight must be at least 1");
+		}
+		this.distribution = distribution;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Gives the number of vertices of the graph to generate
+	 *
+	 * @return Number of vertices
+	 */
+	public int vertexCount() {
+		return n;
+	}
+
+	/**
+	 * Gives the number of edges of the graph to generate
+	 *
+	 * @return Number of edges
+	 */
+	public long edgeCount() {
+		if (shape.equals("random")) {
+			return param;
+		} else if (shape.equals("grid")) {
+			int cols = (int)param, rows = n / cols;
+			return (long)rows * (cols-1) + (long)(rows-1) * cols;
+		} else if (shape.equals("power")) {
+			// vertex v is joined to min(v, k) earlier vertices
+			long k = Math.min(param, n);
+			return k * (n-1) - k * (k-1) / 2;
+		}
+		return (long)n * (n-1) / 2;
+	}
+
+	/**
+	 * Generates the graph
+	 *
+	 * @return Graph description, ending with a new line
+	 */
+	public String generate() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			generate(sb);
+		} catch (IOException e) {
+			// StringBuilder doesn't throw
+			throw new AssertionError(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the graph into the given target. The same seed and settings always give
+	 * the same graph.
+	 *
+	 * @param out Target
+	 * @throws IOException If the target throws an IOException
+	 */
+	public void generate(Appendable out)
+	throws IOException {
+		random = new Random(seed);
+		out.append(String.valueOf(n)).append('\n');
+		for (int v=0; v < n; v++) {
+			out.append('v').append(String.valueOf(v)).append('\n');
+		}
+		if (shape.equals("random")) {
+			random(out);
+		} else if (shape.equals("grid")) {
+			grid(out);
+		} else if (shape.equals("power")) {
+			powerLaw(out);
+		} else {
+			complete(out);
+		}
+	}
+
+	/**
+	 * Writes the graph to a file
+	 *
+	 * @param file Name of the file
+	 * @throws IOException If the file can't be written
+	 */
+	public void write(String file)
+	throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+		try {
+			generate(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void random(Appendable out)
+	throws IOException {
+		// every vertex after the first hangs off a random earlier one, so the graph is connected
+		for (int v=1; v < n; v++) {
+			edge(out, random.nextInt(v), v);
+		}
+		for (long e=n-1; e < param; e++) {
+			int u = random.nextInt(n), v = random.nextInt(n-1);
+			// v is drawn from the n-1 vertices other than u
+			edge(out, u, v < u ? v : v+1);
+		}
+	}
+
+	private void grid(Appendable out)
+	throws IOException {
+		int cols = (int)param, rows = n / cols;
+		for (int r=0; r < rows; r++) {
+			for (int c=0; c < cols; c++) {
+				int v = r * cols + c;
+				if (c+1 < cols) {
+					edge(out, v, v+1);
+				}
+				if (r+1 < rows) {
+					edge(out, v, v+cols);
+				}
+			}
+		}
+	}
+
+	private void powerLaw(Appendable out)
+	throws IOException {
+		int k = (int)Math.min(param, n);
+		// both ends of every edge so far, so a uniform pick is a pick by degree
+		int[] ends = new int[(int)Math.min(2 * edgeCount(), Integer.MAX_VALUE - 8)];
+		int size = 0;
+		int[] picked = new int[k];
+		for (int v=1; v < n; v++) {
+			int want = Math.min(v, k), count = 0;
+			while (count < want) {
+				// the first vertices have no edges yet, so they are picked uniformly
+				int u = size == 0 || v <= k ? random.nextInt(v) : ends[random.nextInt(size)];
+				boolean seen = false;
+				for (int i=0; i < count && !seen; i++) {
+					seen = picked[i] == u;
+				}
+				if (!seen) {
+					picked[count++] = u;
+				}
+			}
+			for (int i=0; i < count; i++) {
+				edge(out, picked[i], v);
+				if (size+1 < ends.length) {
+					ends[size++] = picked[i];
+					ends[size++] = v;
+				}
+			}
+		}
+	}
+
+	private void complete(Appendable out)
+	throws IOException {
+		for (int u=0; u < n; u++) {
+			for (int v=u+1; v < n; v++) {
+				edge(out, u, v);
+			}
+		}
+	}
+
+	/**
+	 * Writes an edge with a weight drawn from the distribution
+	 */
+	private void edge(Appendable out, int u, int v)
+	throws IOException {
+		out.append('v').append(String.valueOf(u)).append(" v").append(String.valueOf(v))
+			.append(' ').append(String.valueOf(weight())).append('\n');
+	}
+
+	private int weight() {
+		if (distribution.equals("uniform")) {
+			return 1 + random.nextInt(maxWeight);
+		} else if (distribution.equals("constant")) {
+			return maxWeight;
+		} else if (distribution.equals("exponential")) {
+			double w = 1 - Math.log(1 - random.nextDouble()) * maxWeight / 10;
+			return (int)Math.min(w, maxWeight);
+		}
+		return 1 + random.nextInt(Math.min(4, maxWeight));
+	}
+
+	/**
+	 * @param args seed, distribution, maxWeight, outfile, shape and its arguments
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		GraphGenerator gen = null;
+		if (args.length >= 6) {
+			gen = new GraphGenerator(Long.parseLong(args[0]));
+			gen.setWeights(args[1], Integer.parseInt(args[2]));
+			String shape = args[4];
+			if (shape.equals("random") && args.length == 7) {
+				gen.setRandom(Integer.parseInt(args[5]), Long.parseLong(args[6]));
+			} else if (shape.equals("grid") && args.length == 7) {
+				gen.setGrid(Integer.parseInt(args[5]), Integer.parseInt(args[6]));
+			} else if (shape.equals("power") && args.length == 7) {
+				gen.setPowerLaw(Integer.parseInt(args[5]), Integer.parseInt(args[6]));
+			} else if (shape.equals("complete") && args.length == 6) {
+				gen.setComplete(Integer.parseInt(args[5]));
+			} else {
+				gen = null;
+			}
+		}
+		if (gen == null) {
+			System.err.println("Usage: java apps.GraphGenerator seed distribution maxWeight outfile shape arg ...");
+			System.err.println("Shapes: random n m, grid rows cols, power n k, complete n");
+			System.exit(1);
+		}
+		gen.write(args[3]);
+	}
+}
@@ -0,0 +1,94 @@
+package apps;
+
+import java.util.Arrays;
+
+import structures.*;
+
+/**
+ * Kruskal's algorithm: sorts all edges by weight, in parallel, and adds them lightest
+ * first to the forest, skipping every edge whose ends a DisjointSet already has in one
+ * tree. Each edge is packed in a long, weight in the high half and edge number in the low
+ * half, so the sort moves primitive longs only and equal weights come out in a fixed order.
+ */
+public class KruskalMst implements MstAlgorithm {
+
+	/**
+	 * The edges of a graph, one per pair of arcs, with a sort key for each
+	 */
+	static class Edges {
+		/**
+		 * Sort key of every edge: weight in the high half, edge number in the low half
+		 */
+		long[] keys;
+
+		/**
+		 * Vertex the arc of every edge goes out of
+		 */
+		int[] from;
+
+		/**
+		 * Arc of every edge, going from the lower numbered vertex to the higher one
+		 */
+		int[] arc;
+
+		int count;
+
+		/**
+		 * Takes one arc for every edge of the graph, the one out of its lower numbered end.
+		 * Loops (arcs from a vertex to itself) are left out, as no tree can have them.
+		 */
+		Edges(CompactGraph graph) {
+			int[] offsets = graph.offsets, targets = graph.targets, weights = graph.weights;
+			int n = graph.vertexCount();
+			int m = 0;
+			for (int v=0; v < n; v++) {
+				for (int e=offsets[v]; e < offsets[v+1]; e++) {
+					if (targets[e] > v) {
+						m++;
+					}
+				}
+			}
+			keys = new long[m];
+			from = new int[m];
+			arc = new int[m];
+			for (int v=0; v < n; v++) {
+				for (int e=offsets[v]; e < offsets[v+1]; e++) {
+					if (targets[e] > v) {
+						keys[count] = ((long)weights[e] << 32) | count;
+						from[count] = v;
+						arc[count] = e;
+						count++;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the edge number in a sort key
+		 */
+		static int edge(long key) {
+			return (int)key;
+		}
+	}
+
+	public String getName() {
+		return "kruskal";
+	}
+
+	public int[] findArcs(CompactGraph graph) {
+		Edges edges = new Edges(graph);
+		Arrays.parallelSort(edges.keys);
+		int n = graph.vertexCount();
+		DisjointSet sets = new DisjointSet(n);
+		int[] tree = new int[Math.max(n-1, 0)];
+		int size = 0;
+		for (int i=0; i < edges.count && size < tree.length; i++) {
+			int edge = Edges.edge(edges.keys[i]);
+			int e = edges.arc[edge];
+			if (sets.union(edges.from[edge], graph.targets[e])) {
+				tree[size++] = e;
+			}
+		}
+		return Arrays.copyOf(tree, size);
+	}
+}
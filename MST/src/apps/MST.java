@@ -19,7 +19,7 @@ public class MST {
 		
 		for (int i = 0; i < graph.vertices.length; i++){
 			PartialTree T = new PartialTree(graph.vertices[i]);
-			MinHeap<PartialTree.Arc> arcs = T.getArcs();
+			PairingHeap<PartialTree.Arc> arcs = T.getArcs();
 			for (structures.Vertex.Neighbor n = graph.vertices[i].neighbors; n != null ; n = n.next){
 				arcs.insert(new apps.PartialTree.Arc(graph.vertices[i],n.vertex,n.weight));
 			}
@@ -30,6 +30,29 @@ public class MST {
 		
 	}
 
+	/**
+	 * Initializes the algorithm by building single-vertex partial trees, taking the arcs
+	 * straight from the arrays of a compact graph
+	 * 
+	 * @param graph Graph for which the MST is to be found
+	 * @return The initial partial tree list
+	 */
+	public static PartialTreeList initialize(CompactGraph graph) {
+	
+		PartialTreeList L = new PartialTreeList();
+		Vertex[] vertices = graph.getVertices();
+		
+		for (int i = 0; i < vertices.length; i++){
+			PartialTree T = new PartialTree(vertices[i]);
+			PairingHeap<PartialTree.Arc> arcs = T.getArcs();
+			for (int e = graph.offsets[i]; e < graph.offsets[i+1]; e++){
+				arcs.insert(new PartialTree.Arc(vertices[i],vertices[graph.targets[e]],graph.weights[e]));
+			}
+			L.append(T);
+		}
+		return L;
+	}
+
 	/**
 	 * Executes the algorithm on a graph, starting with the initial partial tree list
 	 * 
@@ -39,28 +62,17 @@ public class MST {
 	public static ArrayList<PartialTree.Arc> execute(PartialTreeList ptlist) {
 		
 		ArrayList<PartialTree.Arc> finalmst = new ArrayList<PartialTree.Arc>();
+		DisjointSet sets = ptlist.sets;
 		
 		while(ptlist.size() > 1){
 			
 			PartialTree temp = ptlist.remove();
-			MinHeap<PartialTree.Arc> tempHeap = temp.getArcs();
-			
-			boolean sameRoot = true;
-			Vertex searchVert = null;
-			
-			while(sameRoot){
-				
-				PartialTree.Arc tempArc = tempHeap.deleteMin();
-				
-				if(!(tempArc.v1.getRoot().name.equals(tempArc.v2.getRoot().name))){
-					finalmst.add(tempArc);
-					searchVert = tempArc.v2;
-					sameRoot = false;
-				}
-			
-			}
+			PartialTree.Arc tempArc = temp.deleteMinCrossing(sets);
+			finalmst.add(tempArc);
+			Vertex searchVert = tempArc.v2;
 			
 			PartialTree resultTree = ptlist.removeTreeContaining(searchVert);
+			sets.union(temp.getRoot().id, resultTree.getRoot().id);
 			temp.merge(resultTree);
 			ptlist.append(temp);
 			
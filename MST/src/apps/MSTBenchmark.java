@@ -0,0 +1,483 @@
+package apps;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import structures.*;
+
+/**
+ * Measures graph loading, the partial tree list algorithm, every MstAlgorithm engine and
+ * the heaps on graphs of several shapes made by GraphGenerator, so new engines and heaps
+ * can be compared on the same inputs. Every operation is run on every shape: first for
+ * a warmup period, so the JIT compiler has done its work, and then for a measurement
+ * period. For each pair the throughput (operations per second, counting only the time
+ * inside the operation) and the bytes allocated per operation are reported. Whatever an
+ * operation uses up, such as the partial tree list of MST.execute or a filled heap for
+ * deleteMin, is made again before every run, outside the timed part.
+ * <p>
+ * The heap operations handle a whole graph per run: MinHeap and PairingHeap take one
+ * arc per edge, and IndexedMinHeap one id per vertex, keyed by the weight of its first
+ * arc.
+ * <p>
+ * Allocation is counted on the measuring thread only, so it would miss what the pool
+ * threads of a parallel operation allocate. On a machine with more than one processor,
+ * bytes/op is therefore n/a for the GraphLoader text load, Kruskal (whose sort runs in
+ * parallel) and Boruvka. Usage:
+ * <pre>
+ *     java apps.MSTBenchmark [-w warmupSeconds] [-m measureSeconds] [shape ...]
+ * </pre>
+ * With no shape names, all shapes are run.
+ */
+public class MSTBenchmark {
+
+	/**
+	 * A graph shape, with the generator settings that make it
+	 */
+	static class Shape {
+		String name, kind, distribution;
+		int a, b, maxWeight;
+
+		Shape(String name, String kind, int a, int b, String distribution, int maxWeight) {
+			this.name = name;
+			this.kind = kind;
+			this.a = a;
+			this.b = b;
+			this.distribution = distribution;
+			this.maxWeight = maxWeight;
+		}
+
+		GraphGenerator generator() {
+			GraphGenerator gen = new GraphGenerator(42);
+			if (kind.equals("random")) {
+				gen.setRandom(a, b);
+			} else if (kind.equals("grid")) {
+				gen.setGrid(a, b);
+			} else if (kind.equals("power")) {
+				gen.setPowerLaw(a, b);
+			} else {
+				gen.setComplete(a);
+			}
+			gen.setWeights(distribution, maxWeight);
+			return gen;
+		}
+	}
+
+	static final Shape[] SHAPES = {
+		new Shape("ex", "random", 9, 14, "uniform", 14),
+		new Shape("random", "random", 100000, 400000, "uniform", 1000000),
+		new Shape("grid", "grid", 300, 300, "uniform", 1000),
+		new Shape("power", "power", 100000, 4, "exponential", 1000),
+		new Shape("complete", "complete", 1000, 0, "uniform", 1000000),
+		new Shape("ties", "random", 100000, 400000, "ties", 4),
+	};
+
+	/**
+	 * A generated graph, as files and in memory
+	 */
+	static class Input {
+		String text, binary;
+		CompactGraph graph;
+
+		/**
+		 * One arc per edge, for the heaps of arcs
+		 */
+		PartialTree.Arc[] arcs;
+
+		/**
+		 * Every vertex id, and its key, for IndexedMinHeap
+		 */
+		int[] ids;
+		long[] keys;
+	}
+
+	/**
+	 * An operation to measure
+	 */
+	static abstract class Op {
+		String name;
+
+		/**
+		 * Whether the operation may run on more threads than the calling one
+		 */
+		boolean parallel;
+
+		Op(String name) {
+			this(name, false);
+		}
+
+		Op(String name, boolean parallel) {
+			this.name = name;
+			this.parallel = parallel;
+		}
+
+		/**
+		 * Makes what a run of the operation uses up; runs outside the timed part
+		 *
+		 * @param in The input
+		 * @return State for run, or null if the operation needs none
+		 */
+		Object prepare(Input in) {
+			return null;
+		}
+
+		/**
+		 * Runs the operation
+		 *
+		 * @param in The input
+		 * @param state What prepare returned
+		 * @return Something computed by the operation, so it can't be optimized away
+		 */
+		abstract long run(Input in, Object state)
+		throws IOException;
+	}
+
+	/**
+	 * Runs an MstAlgorithm engine
+	 */
+	static class EngineOp extends Op {
+		String engine;
+
+		EngineOp(String engine) {
+			super("engine " + engine, engine.equals("kruskal") || engine.equals("boruvka"));
+			this.engine = engine;
+		}
+
+		long run(Input in, Object state) {
+			return MstEngines.byName(engine).findArcs(in.graph).length;
+		}
+	}
+
+	static final Op[] OPS = {
+		new Op("load Graph") {
+			long run(Input in, Object state)
+			throws IOException {
+				return new Graph(in.text).vertices.length;
+			}
+		},
+		new Op("load CompactGraph") {
+			long run(Input in, Object state)
+			throws IOException {
+				return new CompactGraph(in.text).arcCount();
+			}
+		},
+		new Op("load GraphLoader", true) {
+			long run(Input in, Object state)
+			throws IOException {
+				return new GraphLoader().loadText(in.text).arcCount();
+			}
+		},
+		new Op("load binary") {
+			long run(Input in, Object state)
+			throws IOException {
+				return GraphLoader.loadBinary(in.binary).arcCount();
+			}
+		},
+		new Op("initialize") {
+			long run(Input in, Object state) {
+				return MST.initialize(in.graph).size();
+			}
+		},
+		new Op("execute") {
+			Object prepare(Input in) {
+				return MST.initialize(in.graph);
+			}
+			long run(Input in, Object state) {
+				return MST.execute((PartialTreeList)state).size();
+			}
+		},
+		new EngineOp("partial-tree"),
+		new EngineOp("kruskal"),
+		new EngineOp("filter-kruskal"),
+		new EngineOp("boruvka"),
+		new EngineOp("prim"),
+		new Op("MinHeap insert") {
+			long run(Input in, Object state) {
+				MinHeap<PartialTree.Arc> heap = new MinHeap<PartialTree.Arc>();
+				for (PartialTree.Arc arc: in.arcs) {
+					heap.insert(arc);
+				}
+				return heap.size();
+			}
+		},
+		new Op("MinHeap deleteMin") {
+			Object prepare(Input in) {
+				MinHeap<PartialTree.Arc> heap = new MinHeap<PartialTree.Arc>(in.arcs.length);
+				for (PartialTree.Arc arc: in.arcs) {
+					heap.insert(arc);
+				}
+				return heap;
+			}
+			@SuppressWarnings("unchecked")
+			long run(Input in, Object state) {
+				MinHeap<PartialTree.Arc> heap = (MinHeap<PartialTree.Arc>)state;
+				long total = 0;
+				while (!heap.isEmpty()) {
+					total += heap.deleteMin().weight;
+				}
+				return total;
+			}
+		},
+		new Op("PairingHeap insert") {
+			long run(Input in, Object state) {
+				PairingHeap<PartialTree.Arc> heap = new PairingHeap<PartialTree.Arc>();
+				for (PartialTree.Arc arc: in.arcs) {
+					heap.insert(arc);
+				}
+				return heap.size();
+			}
+		},
+		new Op("PairingHeap deleteMin") {
+			Object prepare(Input in) {
+				PairingHeap<PartialTree.Arc> heap = new PairingHeap<PartialTree.Arc>();
+				for (PartialTree.Arc arc: in.arcs) {
+					heap.insert(arc);
+				}
+				return heap;
+			}
+			@SuppressWarnings("unchecked")
+			long run(Input in, Object state) {
+				PairingHeap<PartialTree.Arc> heap = (PairingHeap<PartialTree.Arc>)state;
+				long total = 0;
+				while (!heap.isEmpty()) {
+					total += heap.deleteMin().weight;
+				}
+				return total;
+			}
+		},
+		new Op("PairingHeap merge") {
+			Object prepare(Input in) {
+				// one heap per arc, merged pairwise in rounds, as partial trees are
+				ArrayList<PairingHeap<PartialTree.Arc>> heaps = new ArrayList<PairingHeap<PartialTree.Arc>>(in.arcs.length);
+				for (PartialTree.Arc arc: in.arcs) {
+					PairingHeap<PartialTree.Arc> heap = new PairingHeap<PartialTree.Arc>();
+					heap.insert(arc);
+					heaps.add(heap);
+				}
+				return heaps;
+			}
+			@SuppressWarnings("unchecked")
+			long run(Input in, Object state) {
+				ArrayList<PairingHeap<PartialTree.Arc>> heaps = (ArrayList<PairingHeap<PartialTree.Arc>>)state;
+				for (int step=1; step < heaps.size(); step *= 2) {
+					for (int i=0; i+step < heaps.size(); i += 2*step) {
+						heaps.get(i).merge(heaps.get(i+step));
+					}
+				}
+				return heaps.isEmpty() ? 0 : heaps.get(0).getMin().weight;
+			}
+		},
+		new Op("Indexed insert") {
+			Object prepare(Input in) {
+				return new IndexedMinHeap(in.ids.length);
+			}
+			long run(Input in, Object state) {
+				IndexedMinHeap heap = (IndexedMinHeap)state;
+				for (int i=0; i < in.ids.length; i++) {
+					heap.insert(in.ids[i], in.keys[i]);
+				}
+				return heap.size();
+			}
+		},
+		new Op("Indexed heapify") {
+			Object prepare(Input in) {
+				return new IndexedMinHeap(in.ids.length);
+			}
+			long run(Input in, Object state) {
+				IndexedMinHeap heap = (IndexedMinHeap)state;
+				heap.heapify(in.ids, in.keys, in.ids.length);
+				return heap.size();
+			}
+		},
+		new Op("Indexed decreaseKey") {
+			Object prepare(Input in) {
+				IndexedMinHeap heap = new IndexedMinHeap(in.ids.length);
+				for (int id: in.ids) {
+					heap.insert(id, Long.MAX_VALUE);
+				}
+				return heap;
+			}
+			long run(Input in, Object state) {
+				IndexedMinHeap heap = (IndexedMinHeap)state;
+				for (int i=0; i < in.ids.length; i++) {
+					heap.decreaseKey(in.ids[i], in.keys[i]);
+				}
+				return heap.getMinKey();
+			}
+		},
+		new Op("Indexed deleteMin") {
+			Object prepare(Input in) {
+				IndexedMinHeap heap = new IndexedMinHeap(in.ids.length);
+				heap.heapify(in.ids, in.keys, in.ids.length);
+				return heap;
+			}
+			long run(Input in, Object state) {
+				IndexedMinHeap heap = (IndexedMinHeap)state;
+				long total = 0;
+				while (!heap.isEmpty()) {
+					total += heap.deleteMin();
+				}
+				return total;
+			}
+		},
+	};
+
+	/**
+	 * Results of the operations end up here, so the JIT compiler can't drop them
+	 */
+	static long sink;
+
+	/**
+	 * Thread bean that can report allocated bytes, or null if this JVM can't
+	 */
+	static com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Runs an operation on an input for about the given time
+	 *
+	 * @param op Operation
+	 * @param in Input
+	 * @param nanos Time to run for, in nanoseconds
+	 * @return Number of runs, time inside the operation in nanoseconds, and bytes allocated
+	 *         inside the operation (-1 if not known, or if the operation runs on other
+	 *         threads too)
+	 */
+	static long[] measure(Op op, Input in, long nanos)
+	throws IOException {
+		long runs = 0, time = 0, bytes = 0;
+		boolean counted = threads != null
+				&& !(op.parallel && Runtime.getRuntime().availableProcessors() > 1);
+		long tid = Thread.currentThread().getId();
+		long end = System.nanoTime() + nanos;
+		do {
+			Object state = op.prepare(in);
+			long before = threads == null ? 0 : threads.getThreadAllocatedBytes(tid);
+			long start = System.nanoTime();
+			sink += op.run(in, state);
+			time += System.nanoTime() - start;
+			bytes += threads == null ? 0 : threads.getThreadAllocatedBytes(tid) - before;
+			runs++;
+		} while (System.nanoTime() < end);
+		return new long[] { runs, time, counted ? bytes : -1 };
+	}
+
+	/**
+	 * Generates the files and in-memory forms of a shape
+	 *
+	 * @param shape Shape
+	 * @return Input
+	 */
+	static Input input(Shape shape)
+	throws IOException {
+		Input in = new Input();
+		File text = File.createTempFile("mstbench-" + shape.name, ".txt");
+		text.deleteOnExit();
+		shape.generator().write(text.getPath());
+		in.text = text.getPath();
+		in.graph = new GraphLoader().loadText(in.text);
+		File binary = File.createTempFile("mstbench-" + shape.name, ".bin");
+		binary.deleteOnExit();
+		GraphLoader.writeBinary(in.graph, binary);
+		in.binary = binary.getPath();
+
+		CompactGraph g = in.graph;
+		Vertex[] vertices = g.getVertices();
+		int n = g.vertexCount();
+		in.arcs = new PartialTree.Arc[g.arcCount() / 2];
+		in.ids = new int[n];
+		in.keys = new long[n];
+		int count = 0;
+		for (int v=0; v < n; v++) {
+			for (int e=g.offsets[v]; e < g.offsets[v+1]; e++) {
+				// the generators make no loops, so every edge is the arc from its greater end
+				if (g.targets[e] < v && count < in.arcs.length) {
+					in.arcs[count++] = new PartialTree.Arc(vertices[v], vertices[g.targets[e]], g.weights[e]);
+				}
+			}
+			in.ids[v] = v;
+			in.keys[v] = g.offsets[v] < g.offsets[v+1] ? g.weights[g.offsets[v]] : 0;
+		}
+		return in;
+	}
+
+	/**
+	 * Measures every operation on every shape and prints the results
+	 *
+	 * @param shapes Shapes to run
+	 * @param warmup Warmup time per operation, in seconds
+	 * @param measure Measurement time per operation, in seconds
+	 */
+	static void runAll(ArrayList<Shape> shapes, double warmup, double measure)
+	throws IOException {
+		System.out.printf("%-9s %-22s %12s %12s %14s%n", "shape", "operation", "ops/s", "ms/op", "bytes/op");
+		for (Shape shape: shapes) {
+			Input in = input(shape);
+			System.out.printf("# %s: %d vertices, %d edges, %d bytes%n", shape.name,
+					in.graph.vertexCount(), in.graph.arcCount() / 2, new File(in.text).length());
+
+			for (Op op: OPS) {
+				measure(op, in, (long)(warmup * 1e9));
+				long[] r = measure(op, in, (long)(measure * 1e9));
+				double perOp = (double)r[1] / r[0];
+				System.out.printf("%-9s %-22s %12.1f %12.4f %14s%n", shape.name, op.name,
+						1e9 / perOp, perOp / 1e6, r[2] < 0 ? "n/a" : String.valueOf(r[2] / r[0]));
+			}
+			new File(in.text).delete();
+			new File(in.binary).delete();
+		}
+	}
+
+	/**
+	 * @param args Options and shape names
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		double warmup = 2, measure = 5;
+		ArrayList<Shape> shapes = new ArrayList<Shape>();
+		for (int i=0; i < args.length; i++) {
+			if (args[i].equals("-w") && i+1 < args.length) {
+				warmup = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-m") && i+1 < args.length) {
+				measure = Double.parseDouble(args[++i]);
+			} else {
+				boolean found = false;
+				for (Shape s: SHAPES) {
+					if (s.name.equals(args[i])) {
+						shapes.add(s);
+						found = true;
+					}
+				}
+				if (!found) {
+					System.err.println("Usage: java apps.MSTBenchmark [-w warmupSeconds] [-m measureSeconds] [shape ...]");
+					System.err.print("Shapes:");
+					for (Shape s: SHAPES) {
+						System.err.print(" " + s.name);
+					}
+					System.err.println();
+					System.exit(1);
+				}
+			}
+		}
+		if (shapes.isEmpty()) {
+			for (Shape s: SHAPES) {
+				shapes.add(s);
+			}
+		}
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			threads = (com.sun.management.ThreadMXBean)bean;
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				threads = null;
+			}
+		}
+
+		runAll(shapes, warmup, measure);
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package apps;
+
+import structures.CompactGraph;
+
+/**
+ * An engine that finds a minimum spanning tree, or a minimum spanning forest if the graph
+ * is not connected. MstEngines picks an engine for a graph, and turns the arcs an engine
+ * finds into PartialTree.Arc objects, as MST.execute returns them.
+ */
+public interface MstAlgorithm {
+
+	/**
+	 * Returns a short name for this engine, for reports
+	 *
+	 * @return Name
+	 */
+	String getName();
+
+	/**
+	 * Finds the arcs of a minimum spanning forest
+	 *
+	 * @param graph Graph
+	 * @return Index (into targets and weights) of one arc for every edge of the forest
+	 * @throws IllegalArgumentException If this engine can't handle the graph
+	 */
+	int[] findArcs(CompactGraph graph)
+	throws IllegalArgumentException;
+}
@@ -0,0 +1,196 @@
+package apps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import structures.*;
+
+/**
+ * Picks an MstAlgorithm for a graph, and runs engines. Usage:
+ * <pre>
+ *     java apps.MstEngines graphfile [engine]
+ * </pre>
+ * where engine is one of the names in ENGINES, or auto (the default) to let select pick.
+ */
+public class MstEngines {
+
+	/**
+	 * Names of the engines, as getName returns them
+	 */
+	public static final String[] ENGINES = {
+		"partial-tree", "kruskal", "filter-kruskal", "boruvka", "prim"
+	};
+
+	/**
+	 * Average degree from which a graph counts as dense
+	 */
+	static final int DENSE_DEGREE = 16;
+
+	/**
+	 * Number of edges from which a sparse graph is worth spreading over threads
+	 */
+	static final int PARALLEL_EDGES = 1 << 20;
+
+	private MstEngines() {
+	}
+
+	/**
+	 * Returns the engine with the given name
+	 *
+	 * @param name Name of an engine
+	 * @return New engine
+	 * @throws IllegalArgumentException If there is no engine with that name
+	 */
+	public static MstAlgorithm byName(String name)
+	throws IllegalArgumentException {
+		if (name.equals("partial-tree")) {
+			return new PartialTreeMst();
+		} else if (name.equals("kruskal")) {
+			return new KruskalMst();
+		} else if (name.equals("filter-kruskal")) {
+			return new FilterKruskalMst();
+		} else if (name.equals("boruvka")) {
+			return new BoruvkaMst();
+		} else if (name.equals("prim")) {
+			return new PrimMst();
+		}
+		throw new IllegalArgumentException("no engine " + name);
+	}
+
+	/**
+	 * Picks the engine likely to be fastest for a graph:
+	 * <ul>
+	 * <li>If all edges have the same weight, any spanning forest is minimal, and sorting
+	 *     the edges would be wasted, so Boruvka, which never sorts.</li>
+	 * <li>For a graph so dense that m log n is at least n squared, Prim with an array
+	 *     scan, in O(n^2) time that does not depend on m.</li>
+	 * <li>For another dense graph (average degree DENSE_DEGREE or more), Filter-Kruskal,
+	 *     which drops most heavy edges unsorted.</li>
+	 * <li>For a large sparse graph on a machine with more than one processor, Boruvka,
+	 *     which uses all of them.</li>
+	 * <li>Otherwise Kruskal.</li>
+	 * </ul>
+	 * The partial tree list engine is never picked: it needs a connected graph and is
+	 * slower than Kruskal on every shape.
+	 *
+	 * @param graph Graph
+	 * @return New engine
+	 */
+	public static MstAlgorithm select(CompactGraph graph) {
+		int n = graph.vertexCount();
+		long m = graph.arcCount() / 2;
+		int[] weights = graph.weights;
+		boolean uniform = true;
+		for (int e=1; e < weights.length && uniform; e++) {
+			uniform = weights[e] == weights[0];
+		}
+		return select(n, m, uniform, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Picks an engine from the shape of a graph; see select(CompactGraph)
+	 *
+	 * @param n Number of vertices
+	 * @param m Number of edges
+	 * @param uniform Whether all edges have the same weight
+	 * @param processors Number of processors to use
+	 * @return New engine
+	 */
+	static MstAlgorithm select(int n, long m, boolean uniform, int processors) {
+		if (uniform && m > 0) {
+			return new BoruvkaMst(processors);
+		}
+		if (n > 1 && PrimMst.dense(n, m)) {
+			return new PrimMst();
+		}
+		if (n > 0 && m >= (long)DENSE_DEGREE * n / 2) {
+			return new FilterKruskalMst();
+		}
+		if (processors > 1 && m >= PARALLEL_EDGES) {
+			return new BoruvkaMst(processors);
+		}
+		return new KruskalMst();
+	}
+
+	/**
+	 * Runs an engine on a graph
+	 *
+	 * @param engine Engine
+	 * @param graph Graph
+	 * @return Array list of all arcs in the forest - sequence of arcs is irrelevant
+	 */
+	public static ArrayList<PartialTree.Arc> execute(MstAlgorithm engine, CompactGraph graph) {
+		return toArcs(graph, engine.findArcs(graph));
+	}
+
+	/**
+	 * Turns arc indexes into arcs between vertex objects
+	 *
+	 * @param graph Graph
+	 * @param arcs Arc indexes
+	 * @return Array list of arcs, in the same order
+	 */
+	public static ArrayList<PartialTree.Arc> toArcs(CompactGraph graph, int[] arcs) {
+		Vertex[] vertices = graph.getVertices();
+		ArrayList<PartialTree.Arc> result = new ArrayList<PartialTree.Arc>(arcs.length);
+		for (int e: arcs) {
+			result.add(new PartialTree.Arc(vertices[source(graph, e)], vertices[graph.targets[e]], graph.weights[e]));
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the vertex an arc goes out of, by binary search on the offsets
+	 *
+	 * @param graph Graph
+	 * @param e Arc index
+	 * @return Vertex v with offsets[v] <= e < offsets[v+1]
+	 */
+	public static int source(CompactGraph graph, int e) {
+		int[] offsets = graph.offsets;
+		int lo = 0, hi = graph.vertexCount() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (offsets[mid] <= e) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Adds up the weights of arcs
+	 *
+	 * @param graph Graph
+	 * @param arcs Arc indexes
+	 * @return Total weight
+	 */
+	public static long weight(CompactGraph graph, int[] arcs) {
+		long total = 0;
+		for (int e: arcs) {
+			total += graph.weights[e];
+		}
+		return total;
+	}
+
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java apps.MstEngines graphfile [auto|partial-tree|kruskal|filter-kruskal|boruvka|prim]");
+			System.exit(1);
+		}
+		CompactGraph graph = new GraphLoader().loadCompact(args[0]);
+		String name = args.length > 1 ? args[1] : "auto";
+		MstAlgorithm engine = name.equals("auto") ? select(graph) : byName(name);
+		long start = System.nanoTime();
+		int[] arcs = engine.findArcs(graph);
+		long time = System.nanoTime() - start;
+		for (PartialTree.Arc arc: toArcs(graph, arcs)) {
+			System.out.println(arc);
+		}
+		System.out.printf("# %s: %d edges, weight %d, %.3f ms%n", engine.getName(), arcs.length,
+				weight(graph, arcs), time / 1e6);
+	}
+}
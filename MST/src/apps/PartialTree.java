@@ -1,5 +1,7 @@
 package apps;
 
+import java.util.NoSuchElementException;
+
 import structures.*;
 
 public class PartialTree {
@@ -73,9 +75,16 @@ public class PartialTree {
 	private Vertex root;
     
 	/**
-	 * The arcs included in this partial tree
+	 * The arcs out of the vertices of this partial tree. Arcs whose other end has since
+	 * joined this tree are stale; they are left in place and dropped when they reach the
+	 * top (see deleteMinCrossing).
 	 */
-	private MinHeap<Arc> arcs;
+	private PairingHeap<Arc> arcs;
+
+	/**
+	 * Number of vertices in this partial tree
+	 */
+	private int size;
 
 	/**
 	 * Initializes this partial tree with given vertex
@@ -84,19 +93,47 @@ public class PartialTree {
 	 */
     public PartialTree(Vertex vertex) {
     	root = vertex;
-    	arcs = new MinHeap<Arc>();
+    	arcs = new PairingHeap<Arc>();
+    	size = 1;
     }
 
     /**
-     * Merges another partial tree into this partial tree
+     * Merges another partial tree into this partial tree. The root of the smaller tree
+     * is hung under the root of the larger one, which becomes the root of this tree, so
+     * parent chains stay O(log n) long.
      * 
      * @param other The partial tree to be merged with this tree.
      */
     public void merge(PartialTree other)	{
-    	other.root.parent = root;
+    	if (other.size > size) {
+    		root.parent = other.root;
+    		root = other.root;
+    	} else {
+    		other.root.parent = root;
+    	}
+    	size += other.size;
     	arcs.merge(other.arcs);
     }
     
+    /**
+     * Removes and returns the lowest weight arc that leaves this tree, removing on the
+     * way all lower weight arcs whose ends are both in this tree. Every arc is removed at
+     * most once, so the stale arcs cost nothing more than their insertion did.
+     * 
+     * @param sets Vertex sets of the partial trees, by vertex id
+     * @return Lightest arc to another tree
+     * @throws NoSuchElementException If no arc leaves this tree
+     */
+    public Arc deleteMinCrossing(DisjointSet sets)
+    throws NoSuchElementException {
+    	while (true) {
+    		Arc arc = arcs.deleteMin();
+    		if (sets.find(arc.v1.id) != sets.find(arc.v2.id)) {
+    			return arc;
+    		}
+    	}
+    }
+
     /**
      * Returns the root of this tree.
      * 
@@ -112,7 +149,7 @@ public class PartialTree {
      * 
      * @return Priority-ordered arc set.
      */
-    public MinHeap<Arc> getArcs() {
+    public PairingHeap<Arc> getArcs() {
     	return arcs;
     }
     
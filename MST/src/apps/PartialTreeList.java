@@ -1,15 +1,17 @@
 package apps;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+import structures.DisjointSet;
 import structures.Vertex;
 
 
 public class PartialTreeList implements Iterable<PartialTree> {
     
 	/**
-	 * Inner class - to build the partial tree circular linked list 
+	 * Inner class - to build the partial tree circular doubly linked list 
 	 * 
 	 */
 	public static class Node {
@@ -23,15 +25,27 @@ public class PartialTreeList implements Iterable<PartialTree> {
 		 */
 		public Node next;
 		
+		/**
+		 * Previous node in linked list
+		 */
+		public Node prev;
+		
+		/**
+		 * Representative of the vertex set of the tree when it was appended, which is
+		 * where this node is in the index of the list
+		 */
+		int key;
+		
 		/**
 		 * Initializes this node by setting the tree part to the given tree,
-		 * and setting next part to null
+		 * and setting next and prev parts to null
 		 * 
 		 * @param tree Partial tree
 		 */
 		public Node(PartialTree tree) {
 			this.tree = tree;
 			next = null;
+			prev = null;
 		}
 	}
 
@@ -45,12 +59,26 @@ public class PartialTreeList implements Iterable<PartialTree> {
 	 */
 	private int size;
 	
+	/**
+	 * Vertex sets of the trees in this list, by vertex id. Every appended tree has the
+	 * id of its root in here; MST.execute unites the sets of the trees it merges.
+	 */
+	DisjointSet sets;
+	
+	/**
+	 * Node of every tree in the list, by the representative of its vertex set, so that
+	 * removeTreeContaining finds a tree without walking the list
+	 */
+	private Node[] index;
+	
 	/**
 	 * Initializes this list to empty
 	 */
     public PartialTreeList() {
     	rear = null;
     	size = 0;
+    	sets = new DisjointSet();
+    	index = new Node[8];
     }
 
     /**
@@ -60,14 +88,24 @@ public class PartialTreeList implements Iterable<PartialTree> {
      */
     public void append(PartialTree tree) {
     	Node ptr = new Node(tree);
+    	sets.grow(tree.getRoot().id+1);
     	if (rear == null) {
     		ptr.next = ptr;
+    		ptr.prev = ptr;
     	} else {
     		ptr.next = rear.next;
+    		ptr.prev = rear;
+    		rear.next.prev = ptr;
     		rear.next = ptr;
     	}
     	rear = ptr;
     	size++;
+    	
+    	ptr.key = sets.find(tree.getRoot().id);
+    	if (ptr.key >= index.length) {
+    		index = Arrays.copyOf(index, Math.max(sets.size(), index.length*2));
+    	}
+    	index[ptr.key] = ptr;
     }
 
     /**
@@ -82,25 +120,15 @@ public class PartialTreeList implements Iterable<PartialTree> {
     	if(this.rear == null){
     		throw new NoSuchElementException();
     	}
-    	if(this.size() == 1){
-    		PartialTree pt = rear.tree;
-    		size--;
-    		rear = null;
-    		return pt;
-    	}
-    	
-    	PartialTree pt = rear.next.tree;
-    	
-    	rear.next = rear.next.next;
-    	size--;
-    			 
-    	return pt;
-    	
-
+    	Node front = rear.next;
+    	unlink(front);
+    	return front.tree;
     }
 
     /**
-     * Removes the tree in this list that contains a given vertex.
+     * Removes the tree in this list that contains a given vertex. The tree is found
+     * through the index in constant time, as long as its vertex set has not been united
+     * with another one since it was appended; otherwise the list is searched.
      * 
      * @param vertex Vertex whose tree is to be removed
      * @return The tree that is removed
@@ -108,39 +136,50 @@ public class PartialTreeList implements Iterable<PartialTree> {
      */
     public PartialTree removeTreeContaining(Vertex vertex) 
     throws NoSuchElementException {
-    	if (vertex == null)
+    	if (vertex == null || rear == null || vertex.id < 0 || vertex.id >= sets.size())
 			throw new NoSuchElementException();
 	
-		PartialTreeList.Node ptr = rear.next;
-		PartialTreeList.Node prev = rear;
-		PartialTree ptree = null;
+		int set = sets.find(vertex.id);
+		Node ptr = set < index.length ? index[set] : null;
 		
-		for (; ptr != rear; ptr = ptr.next) {
-			if (ptr.tree.getRoot().name.equals(vertex.getRoot().name)) {
-				ptree = ptr.tree;
-				prev.next = ptr.next;
-				size--;
-				break;							
+		if (ptr == null) {
+			// the set of some tree changed its representative while the tree was listed
+			Node first = rear.next;
+			for (Node p = first; ; p = p.next) {
+				if (sets.find(p.tree.getRoot().id) == set) {
+					ptr = p;
+					break;
+				}
+				if (p == rear)
+					throw new NoSuchElementException();
 			}
-			prev = ptr;
 		}
 		
-		if (ptr == rear && ptr.tree.getRoot().name.equals(vertex.getRoot().name)) {
-			ptree = ptr.tree;
-			prev.next = ptr.next;
-			rear = prev;
-			size--;
-			
-		}
-		else if (ptr == rear && !ptr.tree.getRoot().name.equals(vertex.getRoot().name))
-			throw new NoSuchElementException();
-		
-		if (size == 0)
-			rear = null;
-		
-		return ptree;
+		unlink(ptr);
+		return ptr.tree;
      }
     
+    /**
+     * Takes a node out of the list and the index
+     * 
+     * @param ptr Node in this list
+     */
+    private void unlink(Node ptr) {
+    	if (size == 1) {
+    		rear = null;
+    	} else {
+    		ptr.prev.next = ptr.next;
+    		ptr.next.prev = ptr.prev;
+    		if (ptr == rear)
+    			rear = ptr.prev;
+    	}
+    	ptr.next = null;
+    	ptr.prev = null;
+    	size--;
+    	if (index[ptr.key] == ptr)
+    		index[ptr.key] = null;
+    }
+    
     /**
      * Gives the number of trees in this list
      * 
@@ -0,0 +1,46 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import structures.*;
+
+/**
+ * Runs the partial tree list algorithm of MST.initialize and MST.execute as an
+ * MstAlgorithm. That algorithm needs a connected graph.
+ */
+public class PartialTreeMst implements MstAlgorithm {
+
+	public String getName() {
+		return "partial-tree";
+	}
+
+	public int[] findArcs(CompactGraph graph)
+	throws IllegalArgumentException {
+		ArrayList<PartialTree.Arc> mst;
+		try {
+			mst = MST.execute(MST.initialize(graph));
+		} catch (NoSuchElementException e) {
+			// some partial tree ran out of arcs before the list was down to one tree
+			throw new IllegalArgumentException("graph is not connected");
+		}
+		int[] arcs = new int[mst.size()];
+		for (int i=0; i < arcs.length; i++) {
+			arcs[i] = find(graph, mst.get(i));
+		}
+		return arcs;
+	}
+
+	/**
+	 * Finds the index of an arc of the graph
+	 */
+	private static int find(CompactGraph graph, PartialTree.Arc arc) {
+		int v1 = arc.v1.id, v2 = arc.v2.id;
+		for (int e=graph.offsets[v1]; e < graph.offsets[v1+1]; e++) {
+			if (graph.targets[e] == v2 && graph.weights[e] == arc.weight) {
+				return e;
+			}
+		}
+		throw new IllegalStateException("no arc " + arc);
+	}
+}
@@ -0,0 +1,143 @@
+package apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import structures.*;
+
+/**
+ * Prim's algorithm: grows one tree at a time from a start vertex, always adding the
+ * lightest arc from the tree to a vertex outside it. Only vertices are queued, each with
+ * the weight of its lightest arc from the tree, so the queue holds at most one entry per
+ * vertex however many edges there are. When a graph runs out of arcs from the tree, the
+ * next tree starts at the next vertex not yet reached, so disconnected graphs give a
+ * minimum spanning forest.
+ * <p>
+ * Sparse graphs use an IndexedMinHeap, for O(m log n) time. For dense graphs, where m
+ * log n is more than n squared, the queue is a plain array that is scanned for its
+ * least entry at every step, for O(n^2 + m) time: the scan runs over contiguous memory
+ * and decreasing a key is a single store.
+ */
+public class PrimMst implements MstAlgorithm {
+
+	/**
+	 * Key of a vertex that has no arc from the tree yet
+	 */
+	private static final long UNREACHED = Long.MAX_VALUE;
+
+	public String getName() {
+		return "prim";
+	}
+
+	/**
+	 * Tells if a graph is dense enough for the array scan to beat the heap
+	 *
+	 * @param n Number of vertices
+	 * @param m Number of edges
+	 * @return True if m log2(n) is at least n squared
+	 */
+	static boolean dense(int n, long m) {
+		int log = 32 - Integer.numberOfLeadingZeros(Math.max(n, 1));
+		return m * log >= (long)n * n;
+	}
+
+	public int[] findArcs(CompactGraph graph) {
+		int n = graph.vertexCount();
+		return dense(n, graph.arcCount() / 2) ? scanPrim(graph) : heapPrim(graph);
+	}
+
+	/**
+	 * Finds a minimum spanning forest, as arcs between the vertices of the graph
+	 *
+	 * @param graph Graph
+	 * @return Array list of all arcs in the forest - sequence of arcs is irrelevant
+	 */
+	public ArrayList<PartialTree.Arc> execute(CompactGraph graph) {
+		return MstEngines.execute(this, graph);
+	}
+
+	/**
+	 * Prim's algorithm with an indexed heap of the vertices next to the tree
+	 */
+	int[] heapPrim(CompactGraph graph) {
+		int[] offsets = graph.offsets, targets = graph.targets, weights = graph.weights;
+		int n = graph.vertexCount();
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		// via[v] is the lightest arc from the tree to v found so far
+		int[] via = new int[n];
+		boolean[] done = new boolean[n];
+		int[] tree = new int[Math.max(n-1, 0)];
+		int size = 0;
+
+		for (int start=0; start < n; start++) {
+			if (done[start]) {
+				continue;
+			}
+			via[start] = -1;
+			heap.insert(start, 0);
+			while (!heap.isEmpty()) {
+				int v = heap.deleteMin();
+				done[v] = true;
+				if (via[v] >= 0) {
+					tree[size++] = via[v];
+				}
+				for (int e=offsets[v]; e < offsets[v+1]; e++) {
+					int u = targets[e];
+					if (!done[u] && heap.offer(u, weights[e])) {
+						via[u] = e;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(tree, size);
+	}
+
+	/**
+	 * Prim's algorithm with an array of keys, scanned for the least one at every step
+	 */
+	int[] scanPrim(CompactGraph graph) {
+		int[] offsets = graph.offsets, targets = graph.targets, weights = graph.weights;
+		int n = graph.vertexCount();
+		long[] key = new long[n];
+		int[] via = new int[n];
+		Arrays.fill(key, UNREACHED);
+		Arrays.fill(via, -1);
+		// rest[0..left-1] are the vertices not in any tree yet, and where[v] is the index of v
+		int[] rest = new int[n], where = new int[n];
+		for (int v=0; v < n; v++) {
+			rest[v] = v;
+			where[v] = v;
+		}
+		int left = n;
+		int[] tree = new int[Math.max(n-1, 0)];
+		int size = 0;
+
+		while (left > 0) {
+			// a vertex that is still unreached starts a new tree
+			int best = 0;
+			long bestKey = key[rest[0]];
+			for (int i=1; i < left; i++) {
+				long k = key[rest[i]];
+				if (k < bestKey) {
+					best = i;
+					bestKey = k;
+				}
+			}
+			int v = rest[best];
+			rest[best] = rest[--left];
+			where[rest[best]] = best;
+			where[v] = -1;
+			if (via[v] >= 0) {
+				tree[size++] = via[v];
+			}
+			for (int e=offsets[v]; e < offsets[v+1]; e++) {
+				int u = targets[e];
+				if (where[u] >= 0 && weights[e] < key[u]) {
+					key[u] = weights[e];
+					via[u] = e;
+				}
+			}
+		}
+		return Arrays.copyOf(tree, size);
+	}
+}
@@ -0,0 +1,415 @@
+package apps;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import structures.*;
+
+/**
+ * Answers shortest path queries on a graph with Dijkstra's algorithm, or with A* when a
+ * heuristic is given. The frontier is an IndexedMinHeap, so a shorter path to a queued
+ * vertex lowers its key in place instead of queueing it again.
+ * <p>
+ * All the space a search needs (the heap, and the distance and arc of every vertex) is
+ * allocated once per thread and reused: a vertex holds a distance only if its mark equals
+ * the stamp of the current search, so nothing has to be cleared between searches but the
+ * heap, which a search that stops early leaves partly full. The batch methods spread
+ * their queries over a fork/join pool that lives as long as this object, so its threads,
+ * and their scratch space, serve batch after batch without allocating per query.
+ */
+public class ShortestPaths {
+
+	/**
+	 * Distance to a vertex that can't be reached
+	 */
+	public static final long UNREACHABLE = Long.MAX_VALUE;
+
+	/**
+	 * Estimates the distance from a vertex to a target, for A*. An estimate must never
+	 * exceed the true distance. If it also never drops by more than the weight of an arc
+	 * along the arc, no vertex is searched twice.
+	 */
+	public interface Heuristic {
+		/**
+		 * Estimates the distance from a vertex to a target
+		 *
+		 * @param v Vertex number
+		 * @param target Vertex number of the target
+		 * @return Estimate, 0 or more
+		 */
+		long estimate(int v, int target);
+	}
+
+	/**
+	 * Space for the searches of one thread
+	 */
+	private static class Scratch {
+		final IndexedMinHeap heap;
+		final long[] dist;
+
+		/**
+		 * Arc the best path found so far reaches every vertex by, or -1 for the source
+		 */
+		final int[] via;
+
+		final int[] mark;
+		int stamp;
+
+		Scratch(int n) {
+			heap = new IndexedMinHeap(n);
+			dist = new long[n];
+			via = new int[n];
+			mark = new int[n];
+		}
+
+		/**
+		 * Returns a stamp no vertex is marked with yet
+		 */
+		int newStamp() {
+			if (stamp == Integer.MAX_VALUE) {
+				Arrays.fill(mark, 0);
+				stamp = 0;
+			}
+			return ++stamp;
+		}
+	}
+
+	private final CompactGraph graph;
+	private final int parallelism;
+	private final ThreadLocal<Scratch> scratch;
+	private ForkJoinPool pool;
+
+	/**
+	 * Prepares to search an adjacency linked lists graph, using as many threads as there
+	 * are processors for batches
+	 *
+	 * @param graph Graph, copied into a CompactGraph
+	 * @throws IllegalArgumentException If some edge has a negative weight
+	 */
+	public ShortestPaths(Graph graph)
+	throws IllegalArgumentException {
+		this(new CompactGraph(graph));
+	}
+
+	/**
+	 * Prepares to search a graph, using as many threads as there are processors for
+	 * batches
+	 *
+	 * @param graph Graph
+	 * @throws IllegalArgumentException If some edge has a negative weight
+	 */
+	public ShortestPaths(CompactGraph graph)
+	throws IllegalArgumentException {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Prepares to search a graph, using the given number of threads for batches
+	 *
+	 * @param graph Graph
+	 * @param parallelism Number of threads, at least 1
+	 * @throws IllegalArgumentException If some edge has a negative weight, or parallelism
+	 *         is less than 1
+	 */
+	public ShortestPaths(CompactGraph graph, int parallelism)
+	throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		for (int e=0; e < graph.weights.length; e++) {
+			if (graph.weights[e] < 0) {
+				throw new IllegalArgumentException("negative weight on arc " + e);
+			}
+		}
+		this.graph = graph;
+		this.parallelism = parallelism;
+		final int n = graph.vertexCount();
+		scratch = new ThreadLocal<Scratch>() {
+			protected Scratch initialValue() {
+				return new Scratch(n);
+			}
+		};
+	}
+
+	/**
+	 * Returns the graph this searches
+	 *
+	 * @return Graph
+	 */
+	public CompactGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Searches from a source until the target is taken off the heap, or, if there is no
+	 * target, until the heap runs out
+	 *
+	 * @param s Scratch space of this thread
+	 * @param source Vertex number of the source
+	 * @param target Vertex number of the target, or -1 to reach every vertex
+	 * @param h Heuristic, or null for Dijkstra's algorithm
+	 * @return Stamp of the search, with which the reached vertices are marked
+	 */
+	private int search(Scratch s, int source, int target, Heuristic h) {
+		int[] offsets = graph.offsets, targets = graph.targets, weights = graph.weights;
+		IndexedMinHeap heap = s.heap;
+		long[] dist = s.dist;
+		int[] via = s.via, mark = s.mark;
+		int stamp = s.newStamp();
+		heap.clear();
+		mark[source] = stamp;
+		dist[source] = 0;
+		via[source] = -1;
+		heap.insert(source, h == null ? 0 : h.estimate(source, target));
+		while (!heap.isEmpty()) {
+			int v = heap.deleteMin();
+			if (v == target) {
+				break;
+			}
+			long d = dist[v];
+			for (int e=offsets[v]; e < offsets[v+1]; e++) {
+				int u = targets[e];
+				long nd = d + weights[e];
+				if (mark[u] != stamp || nd < dist[u]) {
+					mark[u] = stamp;
+					dist[u] = nd;
+					via[u] = e;
+					heap.offer(u, h == null ? nd : nd + h.estimate(u, target));
+				}
+			}
+		}
+		return stamp;
+	}
+
+	private void check(int v)
+	throws IndexOutOfBoundsException {
+		if (v < 0 || v >= graph.vertexCount()) {
+			throw new IndexOutOfBoundsException("no vertex " + v);
+		}
+	}
+
+	/**
+	 * Finds the length of a shortest path, with Dijkstra's algorithm
+	 *
+	 * @param source Vertex number of the source
+	 * @param target Vertex number of the target
+	 * @return Length, or UNREACHABLE if there is no path
+	 * @throws IndexOutOfBoundsException If a vertex number is out of range
+	 */
+	public long distance(int source, int target)
+	throws IndexOutOfBoundsException {
+		return distance(source, target, null);
+	}
+
+	/**
+	 * Finds the length of a shortest path, with A*
+	 *
+	 * @param source Vertex number of the source
+	 * @param target Vertex number of the target
+	 * @param h Heuristic, or null for Dijkstra's algorithm
+	 * @return Length, or UNREACHABLE if there is no path
+	 * @throws IndexOutOfBoundsException If a vertex number is out of range
+	 */
+	public long distance(int source, int target, Heuristic h)
+	throws IndexOutOfBoundsException {
+		check(source);
+		check(target);
+		Scratch s = scratch.get();
+		int stamp = search(s, source, target, h);
+		return s.mark[target] == stamp ? s.dist[target] : UNREACHABLE;
+	}
+
+	/**
+	 * Finds a shortest path
+	 *
+	 * @param source Vertex number of the source
+	 * @param target Vertex number of the target
+	 * @param h Heuristic, or null for Dijkstra's algorithm
+	 * @return Arc indexes along the path, from the source on, or null if there is no path
+	 * @throws IndexOutOfBoundsException If a vertex number is out of range
+	 */
+	public int[] path(int source, int target, Heuristic h)
+	throws IndexOutOfBoundsException {
+		check(source);
+		check(target);
+		Scratch s = scratch.get();
+		int stamp = search(s, source, target, h);
+		if (s.mark[target] != stamp) {
+			return null;
+		}
+		int length = 0;
+		for (int v=target; s.via[v] >= 0; v=MstEngines.source(graph, s.via[v])) {
+			length++;
+		}
+		int[] arcs = new int[length];
+		for (int v=target; s.via[v] >= 0; v=MstEngines.source(graph, s.via[v])) {
+			arcs[--length] = s.via[v];
+		}
+		return arcs;
+	}
+
+	/**
+	 * Finds the length of a shortest path from a source to every vertex
+	 *
+	 * @param source Vertex number of the source
+	 * @param out Array of at least vertexCount() entries, which gets the length of every
+	 *        vertex, or UNREACHABLE
+	 * @throws IndexOutOfBoundsException If source is out of range, or out is too short
+	 */
+	public void distances(int source, long[] out)
+	throws IndexOutOfBoundsException {
+		check(source);
+		int n = graph.vertexCount();
+		if (out.length < n) {
+			throw new IndexOutOfBoundsException("output holds " + out.length + " of " + n + " distances");
+		}
+		Scratch s = scratch.get();
+		int stamp = search(s, source, -1, null);
+		for (int v=0; v < n; v++) {
+			out[v] = s.mark[v] == stamp ? s.dist[v] : UNREACHABLE;
+		}
+	}
+
+	/**
+	 * One query of a batch
+	 */
+	private interface Query {
+		void run(int i);
+	}
+
+	/**
+	 * Runs a range of queries of a batch, splitting it in halves while it is larger than
+	 * the grain
+	 */
+	private static class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Query query;
+		final int lo, hi, grain;
+
+		Batch(Query query, int lo, int hi, int grain) {
+			this.query = query;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo <= grain) {
+				for (int i=lo; i < hi; i++) {
+					query.run(i);
+				}
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Batch(query, lo, mid, grain), new Batch(query, mid, hi, grain));
+			}
+		}
+	}
+
+	/**
+	 * Runs the queries of a batch on the pool, which is started on first use
+	 */
+	private void run(Query query, int count) {
+		ForkJoinPool p;
+		synchronized (this) {
+			if (pool == null) {
+				pool = new ForkJoinPool(parallelism);
+			}
+			p = pool;
+		}
+		if (count > 0) {
+			p.invoke(new Batch(query, 0, count, Math.max(1, count / (parallelism * 8))));
+		}
+	}
+
+	/**
+	 * Finds the lengths of many shortest paths in parallel
+	 *
+	 * @param sources Vertex number of the source of every query
+	 * @param targets Vertex number of the target of every query
+	 * @param h Heuristic, or null for Dijkstra's algorithm; called from many threads
+	 * @param out Array that gets the length of every query, or UNREACHABLE
+	 * @throws IllegalArgumentException If the arrays are not all the same length
+	 * @throws IndexOutOfBoundsException If a vertex number is out of range
+	 */
+	public void distances(final int[] sources, final int[] targets, final Heuristic h, final long[] out)
+	throws IllegalArgumentException, IndexOutOfBoundsException {
+		if (targets.length != sources.length || out.length != sources.length) {
+			throw new IllegalArgumentException("sources, targets and out differ in length");
+		}
+		for (int i=0; i < sources.length; i++) {
+			check(sources[i]);
+			check(targets[i]);
+		}
+		run(new Query() {
+			public void run(int i) {
+				out[i] = distance(sources[i], targets[i], h);
+			}
+		}, sources.length);
+	}
+
+	/**
+	 * Finds the lengths of shortest paths from many sources to every vertex, in parallel
+	 *
+	 * @param sources Vertex number of every source
+	 * @param out Array with a row of at least vertexCount() entries per source, which
+	 *        gets the length of every vertex, or UNREACHABLE
+	 * @throws IllegalArgumentException If out has not one row per source
+	 * @throws IndexOutOfBoundsException If a vertex number is out of range, or a row is
+	 *         too short
+	 */
+	public void distances(final int[] sources, final long[][] out)
+	throws IllegalArgumentException, IndexOutOfBoundsException {
+		if (out.length != sources.length) {
+			throw new IllegalArgumentException("out has " + out.length + " rows for " + sources.length + " sources");
+		}
+		for (int i=0; i < sources.length; i++) {
+			check(sources[i]);
+			if (out[i].length < graph.vertexCount()) {
+				throw new IndexOutOfBoundsException("row " + i + " is too short");
+			}
+		}
+		run(new Query() {
+			public void run(int i) {
+				distances(sources[i], out[i]);
+			}
+		}, sources.length);
+	}
+
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: java apps.ShortestPaths graphfile source [target]");
+			System.exit(1);
+		}
+		CompactGraph graph = new GraphLoader().loadCompact(args[0]);
+		ShortestPaths sp = new ShortestPaths(graph);
+		int source = graph.indexOf(args[1]);
+		int target = args.length > 2 ? graph.indexOf(args[2]) : 0;
+		if (source < 0 || target < 0) {
+			System.err.println("no vertex " + (source < 0 ? args[1] : args[2]));
+			System.exit(1);
+		}
+		if (args.length > 2) {
+			int[] path = sp.path(source, target, null);
+			if (path == null) {
+				System.out.println("no path");
+				return;
+			}
+			long length = 0;
+			for (int e: path) {
+				System.out.println(graph.name(MstEngines.source(graph, e)) + " " + graph.name(graph.targets[e]) + " " + graph.weights[e]);
+				length += graph.weights[e];
+			}
+			System.out.println("# length " + length);
+		} else {
+			long[] dist = new long[graph.vertexCount()];
+			sp.distances(source, dist);
+			for (int v=0; v < dist.length; v++) {
+				System.out.println(graph.name(v) + " " + (dist[v] == UNREACHABLE ? "unreachable" : String.valueOf(dist[v])));
+			}
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package apps;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import structures.*;
+
+/**
+ * Finds a minimum spanning forest of a graph that need not be connected, as one minimum
+ * spanning tree per connected component. The components are found in parallel: every
+ * vertex is united with its neighbors in a ConcurrentDisjointSet, on a fork/join pool.
+ * Every component with an edge is then cut out as a CompactGraph of its own, and the
+ * components are handed to MstAlgorithm engines concurrently, on the same pool. So the
+ * partial tree list algorithm, which needs a connected graph, works on forests too.
+ * <p>
+ * With the engine auto, every component gets the engine MstEngines.select picks for
+ * it. A component with at least half of all edges may use all threads of its own;
+ * the others get one thread each, since they already run side by side.
+ */
+public class SpanningForest {
+
+	/**
+	 * Least number of vertices a task scans before it splits in two
+	 */
+	private static final int MIN_GRAIN = 1024;
+
+	private final String engine;
+	private final int parallelism;
+
+	/**
+	 * Initializes this finder to pick an engine per component, and to use as many
+	 * threads as there are processors
+	 */
+	public SpanningForest() {
+		this("auto", Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Initializes this finder to use the given engine and number of threads
+	 *
+	 * @param engine Name of an engine in MstEngines.ENGINES, or auto
+	 * @param parallelism Number of threads, at least 1
+	 * @throws IllegalArgumentException If there is no such engine, or parallelism is
+	 *         less than 1
+	 */
+	public SpanningForest(String engine, int parallelism)
+	throws IllegalArgumentException {
+		if (!engine.equals("auto")) {
+			MstEngines.byName(engine);
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		this.engine = engine;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Connected components of a graph
+	 */
+	static class Components {
+		/**
+		 * Number of components
+		 */
+		int count;
+
+		/**
+		 * Component of every vertex. Components are numbered in the order of their
+		 * smallest vertex.
+		 */
+		int[] label;
+
+		/**
+		 * The vertices of component c, in increasing order, are members[start[c]] to
+		 * members[start[c+1]-1]
+		 */
+		int[] start, members;
+
+		/**
+		 * Index of every vertex among the vertices of its component
+		 */
+		int[] position;
+	}
+
+	/**
+	 * Unites every vertex with its neighbors
+	 */
+	private static class Unite extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final CompactGraph graph;
+		final ConcurrentDisjointSet sets;
+		final int lo, hi, grain;
+
+		Unite(CompactGraph graph, ConcurrentDisjointSet sets, int lo, int hi, int grain) {
+			this.graph = graph;
+			this.sets = sets;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo > grain) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Unite(graph, sets, lo, mid, grain), new Unite(graph, sets, mid, hi, grain));
+				return;
+			}
+			int[] offsets = graph.offsets, targets = graph.targets;
+			for (int v=lo; v < hi; v++) {
+				for (int e=offsets[v]; e < offsets[v+1]; e++) {
+					// the arc the other way unites the same pair
+					if (targets[e] < v) {
+						sets.union(v, targets[e]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Notes the representative of every vertex
+	 */
+	private static class Label extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final ConcurrentDisjointSet sets;
+		final int[] label;
+		final int lo, hi, grain;
+
+		Label(ConcurrentDisjointSet sets, int[] label, int lo, int hi, int grain) {
+			this.sets = sets;
+			this.label = label;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo > grain) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Label(sets, label, lo, mid, grain), new Label(sets, label, mid, hi, grain));
+				return;
+			}
+			for (int v=lo; v < hi; v++) {
+				label[v] = sets.find(v);
+			}
+		}
+	}
+
+	/**
+	 * Finds the spanning trees of a range of components, splitting it in halves down to
+	 * single components so idle threads can steal the rest
+	 */
+	private class Solve extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final CompactGraph graph;
+		final Components comps;
+		final int[] todo;
+		final int lo, hi;
+		final int[][] forest;
+
+		Solve(CompactGraph graph, Components comps, int[] todo, int lo, int hi, int[][] forest) {
+			this.graph = graph;
+			this.comps = comps;
+			this.todo = todo;
+			this.lo = lo;
+			this.hi = hi;
+			this.forest = forest;
+		}
+
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Solve(graph, comps, todo, lo, mid, forest),
+						new Solve(graph, comps, todo, mid, hi, forest));
+				return;
+			}
+			int c = todo[lo];
+			int[] vertices = new int[comps.start[c+1] - comps.start[c]];
+			System.arraycopy(comps.members, comps.start[c], vertices, 0, vertices.length);
+			CompactGraph sub = graph.subgraph(vertices, comps.position);
+			int[] arcs = pick(sub, graph.arcCount()).findArcs(sub);
+			// back to arc numbers of the whole graph
+			for (int i=0; i < arcs.length; i++) {
+				int e = arcs[i], v = MstEngines.source(sub, e);
+				arcs[i] = graph.offsets[vertices[v]] + e - sub.offsets[v];
+			}
+			forest[c] = arcs;
+		}
+	}
+
+	/**
+	 * Picks the engine for a component
+	 *
+	 * @param sub Component
+	 * @param arcs Number of arcs of the whole graph
+	 */
+	private MstAlgorithm pick(CompactGraph sub, int arcs) {
+		if (!engine.equals("auto")) {
+			return MstEngines.byName(engine);
+		}
+		int[] weights = sub.weights;
+		boolean uniform = true;
+		for (int e=1; e < weights.length && uniform; e++) {
+			uniform = weights[e] == weights[0];
+		}
+		int processors = 2L * sub.arcCount() >= arcs ? parallelism : 1;
+		return MstEngines.select(sub.vertexCount(), sub.arcCount() / 2, uniform, processors);
+	}
+
+	/**
+	 * Finds the connected components of a graph
+	 *
+	 * @param graph Graph
+	 * @return Component of every vertex, numbered from 0 in the order of their smallest
+	 *         vertex
+	 */
+	public int[] components(CompactGraph graph) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return components(graph, pool).label;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private Components components(CompactGraph graph, ForkJoinPool pool) {
+		int n = graph.vertexCount();
+		int grain = Math.max(MIN_GRAIN, n / (parallelism * 8));
+		ConcurrentDisjointSet sets = new ConcurrentDisjointSet(n);
+		pool.invoke(new Unite(graph, sets, 0, n, grain));
+		Components comps = new Components();
+		int[] label = new int[n];
+		pool.invoke(new Label(sets, label, 0, n, grain));
+
+		// number the representatives in order of first appearance, and count the sizes
+		int[] number = new int[n];
+		Arrays.fill(number, -1);
+		int[] size = new int[n+1];
+		int count = 0;
+		for (int v=0; v < n; v++) {
+			int r = label[v];
+			if (number[r] < 0) {
+				number[r] = count++;
+			}
+			label[v] = number[r];
+			size[label[v]+1]++;
+		}
+		int[] start = new int[count+1];
+		for (int c=0; c < count; c++) {
+			start[c+1] = start[c] + size[c+1];
+		}
+		int[] members = new int[n], position = new int[n], filled = new int[count];
+		for (int v=0; v < n; v++) {
+			int c = label[v];
+			position[v] = filled[c]++;
+			members[start[c] + position[v]] = v;
+		}
+		comps.count = count;
+		comps.label = label;
+		comps.start = start;
+		comps.members = members;
+		comps.position = position;
+		return comps;
+	}
+
+	/**
+	 * Finds a minimum spanning tree of every connected component of a graph
+	 *
+	 * @param graph Graph
+	 * @return Arc indexes of the tree of every component, with components numbered as by
+	 *         components; a component with one vertex has no arcs
+	 */
+	public int[][] findForest(CompactGraph graph) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			Components comps = components(graph, pool);
+			int[][] forest = new int[comps.count][];
+			int[] todo = new int[comps.count];
+			int size = 0;
+			for (int c=0; c < comps.count; c++) {
+				if (comps.start[c+1] - comps.start[c] > 1) {
+					todo[size++] = c;
+				} else {
+					forest[c] = new int[0];
+				}
+			}
+			if (size > 0) {
+				pool.invoke(new Solve(graph, comps, todo, 0, size, forest));
+			}
+			return forest;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Finds a minimum spanning tree of every connected component of a graph, as arcs
+	 * between the vertices of the graph
+	 *
+	 * @param graph Graph
+	 * @return Array list of the arcs of the tree of every component - sequence of arcs
+	 *         in a tree is irrelevant
+	 */
+	public ArrayList<ArrayList<PartialTree.Arc>> execute(CompactGraph graph) {
+		int[][] forest = findForest(graph);
+		Vertex[] vertices = graph.getVertices();
+		ArrayList<ArrayList<PartialTree.Arc>> result = new ArrayList<ArrayList<PartialTree.Arc>>(forest.length);
+		for (int[] tree: forest) {
+			ArrayList<PartialTree.Arc> arcs = new ArrayList<PartialTree.Arc>(tree.length);
+			for (int e: tree) {
+				arcs.add(new PartialTree.Arc(vertices[MstEngines.source(graph, e)],
+						vertices[graph.targets[e]], graph.weights[e]));
+			}
+			result.add(arcs);
+		}
+		return result;
+	}
+
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("Usage: java apps.SpanningForest graphfile [engine] [threads]");
+			System.exit(1);
+		}
+		CompactGraph graph = new GraphLoader().loadCompact(args[0]);
+		String engine = args.length > 1 ? args[1] : "auto";
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		ArrayList<ArrayList<PartialTree.Arc>> forest = new SpanningForest(engine, threads).execute(graph);
+		for (int c=0; c < forest.size(); c++) {
+			System.out.println("# component " + c + ": " + forest.get(c).size() + " edges");
+			for (PartialTree.Arc arc: forest.get(c)) {
+				System.out.println(arc);
+			}
+		}
+	}
+}
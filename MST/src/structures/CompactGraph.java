@@ -0,0 +1,362 @@
+package structures;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A weighted, undirected graph, stored in compressed sparse row (CSR) format. Vertices
+ * are numbered 0 to vertexCount()-1, in the order of the input. The arcs out of vertex
+ * v are at indexes offsets[v] to offsets[v+1]-1 of targets (the vertex at the other end)
+ * and weights (the weight of the edge). Every edge is stored once in each direction.
+ * Unlike Graph, there is no object per vertex or per arc, so the arcs of a vertex lie
+ * next to each other in memory, and a graph takes 8 bytes per arc plus 4 per vertex.
+ */
+public class CompactGraph {
+
+    /**
+     * Start of the arcs of every vertex in targets and weights; offsets[vertexCount()]
+     * is the total number of arcs
+     */
+    public final int[] offsets;
+
+    /**
+     * Vertex at the other end of every arc
+     */
+    public final int[] targets;
+
+    /**
+     * Weight of every arc
+     */
+    public final int[] weights;
+
+    /**
+     * Name of every vertex
+     */
+    private final String[] names;
+
+    /**
+     * Hash map of vertex name -> vertex number mappings
+     */
+    private final HashMap<String,Integer> vertmap;
+
+    /**
+     * Constructs a graph out of a plain text description in an input file, in the same
+     * format that Graph reads. The file is read twice: once to count the arcs of every
+     * vertex, and once to fill them in, so no per-edge objects are ever created.
+     *
+     * @param file Name of the file that has the input graph description.
+     * @throws IOException If the input file is not found, or is not a graph description.
+     */
+    public CompactGraph(String file)
+    throws IOException {
+        int[] degree;
+        Tokens tk = new Tokens(new BufferedReader(new FileReader(file), 1 << 16));
+        try {
+            int n = readHeader(tk);
+            names = new String[n];
+            vertmap = new HashMap<String,Integer>(n, 2f);
+            for (int v=0; v < n; v++) {
+                names[v] = tk.next();
+                if (names[v] == null) {
+                    throw new IOException(file + ": expected " + n + " vertex names");
+                }
+                vertmap.put(names[v], v);
+            }
+            degree = new int[n];
+            String name;
+            while ((name = tk.next()) != null) {
+                degree[vertex(name, tk)]++;
+                degree[vertex(tk.next(), tk)]++;
+                weight(tk.next(), tk);
+            }
+        } finally {
+            tk.close();
+        }
+
+        offsets = new int[names.length+1];
+        for (int v=0; v < names.length; v++) {
+            offsets[v+1] = offsets[v] + degree[v];
+        }
+        targets = new int[offsets[names.length]];
+        weights = new int[targets.length];
+
+        // degree[v] now counts the arcs of v filled in so far
+        Arrays.fill(degree, 0);
+        tk = new Tokens(new BufferedReader(new FileReader(file), 1 << 16));
+        try {
+            readHeader(tk);
+            for (int v=0; v < names.length; v++) {
+                tk.next();
+            }
+            String name;
+            while ((name = tk.next()) != null) {
+                int v1 = vertex(name, tk);
+                int v2 = vertex(tk.next(), tk);
+                int wt = weight(tk.next(), tk);
+                addArc(degree, v1, v2, wt);
+                addArc(degree, v2, v1, wt);
+            }
+        } finally {
+            tk.close();
+        }
+    }
+
+    /**
+     * Constructs a graph with the same vertices and edges as the given adjacency lists graph
+     *
+     * @param graph Graph to copy
+     */
+    public CompactGraph(Graph graph) {
+        Vertex[] vertices = graph.vertices;
+        int n = vertices.length;
+        names = new String[n];
+        vertmap = new HashMap<String,Integer>(n, 2f);
+        offsets = new int[n+1];
+        for (int v=0; v < n; v++) {
+            names[v] = vertices[v].name;
+            vertmap.put(names[v], v);
+            int degree = 0;
+            for (Vertex.Neighbor nbr=vertices[v].neighbors; nbr != null; nbr=nbr.next) {
+                degree++;
+            }
+            offsets[v+1] = offsets[v] + degree;
+        }
+        targets = new int[offsets[n]];
+        weights = new int[targets.length];
+        for (int v=0; v < n; v++) {
+            int e = offsets[v];
+            for (Vertex.Neighbor nbr=vertices[v].neighbors; nbr != null; nbr=nbr.next) {
+                targets[e] = nbr.vertex.id;
+                weights[e] = nbr.weight;
+                e++;
+            }
+        }
+    }
+
+    /**
+     * Constructs a graph out of arrays that are already filled in, which it takes over
+     *
+     * @param offsets Start of the arcs of every vertex, and the number of arcs at the end
+     * @param targets Vertex at the other end of every arc
+     * @param weights Weight of every arc
+     * @param names Name of every vertex
+     */
+    CompactGraph(int[] offsets, int[] targets, int[] weights, String[] names) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.names = names;
+        vertmap = new HashMap<String,Integer>(names.length, 2f);
+        for (int v=0; v < names.length; v++) {
+            vertmap.put(names[v], v);
+        }
+    }
+
+    private int readHeader(Tokens tk)
+    throws IOException {
+        String count = tk.next();
+        try {
+            int n = count == null ? -1 : Integer.parseInt(count);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+        }
+        throw new IOException("line " + tk.line + ": expected the number of vertices");
+    }
+
+    private int vertex(String name, Tokens tk)
+    throws IOException {
+        Integer v = name == null ? null : vertmap.get(name);
+        if (v == null) {
+            throw new IOException("line " + tk.line + ": " +
+                    (name == null ? "incomplete edge" : "unknown vertex " + name));
+        }
+        return v;
+    }
+
+    private static int weight(String weight, Tokens tk)
+    throws IOException {
+        try {
+            if (weight != null) {
+                return Integer.parseInt(weight);
+            }
+        } catch (NumberFormatException e) {
+        }
+        throw new IOException("line " + tk.line + ": expected an edge weight");
+    }
+
+    private void addArc(int[] filled, int from, int to, int weight) {
+        int e = offsets[from] + filled[from]++;
+        targets[e] = to;
+        weights[e] = weight;
+    }
+
+    /**
+     * Returns the number of vertices
+     *
+     * @return Number of vertices
+     */
+    public int vertexCount() {
+        return names.length;
+    }
+
+    /**
+     * Returns the number of arcs, which is twice the number of edges
+     *
+     * @return Number of arcs
+     */
+    public int arcCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the number of arcs out of a vertex
+     *
+     * @param v Vertex number
+     * @return Degree of v
+     */
+    public int degree(int v) {
+        return offsets[v+1] - offsets[v];
+    }
+
+    /**
+     * Returns the name of a vertex
+     *
+     * @param v Vertex number
+     * @return Name of v
+     */
+    public String name(int v) {
+        return names[v];
+    }
+
+    /**
+     * Returns the number of the vertex with a given name
+     *
+     * @param name Vertex name
+     * @return Vertex number, or -1 if there is no such vertex
+     */
+    public int indexOf(String name) {
+        Integer v = vertmap.get(name);
+        return v == null ? -1 : v;
+    }
+
+    /**
+     * Returns a Vertex object for every vertex, with its name and number but with no
+     * neighbors: the edges stay in the arrays. This is for algorithms such as the partial
+     * tree MST that need vertex objects to hang their state on.
+     *
+     * @return Vertices, indexed by vertex number
+     */
+    public Vertex[] getVertices() {
+        Vertex[] vertices = new Vertex[names.length];
+        for (int v=0; v < vertices.length; v++) {
+            vertices[v] = new Vertex(names[v], v);
+        }
+        return vertices;
+    }
+
+    /**
+     * Returns the subgraph on a set of vertices that no arc leaves, such as the vertices
+     * of a connected component. Vertex i of the subgraph is vertices[i], with the same
+     * name, and its arcs are those of vertices[i] here, in the same order, so arc e of
+     * vertex i of the subgraph is arc offsets[vertices[i]] + e - sub.offsets[i] here.
+     *
+     * @param vertices Vertices of the subgraph, each once
+     * @param position Index in vertices of every vertex in vertices; other entries are
+     *        not read, so one array can serve for many disjoint subgraphs
+     * @return New graph
+     * @throws IllegalArgumentException If an arc leaves the vertices
+     */
+    public CompactGraph subgraph(int[] vertices, int[] position)
+    throws IllegalArgumentException {
+        int k = vertices.length;
+        int[] subOffsets = new int[k+1];
+        for (int i=0; i < k; i++) {
+            subOffsets[i+1] = subOffsets[i] + degree(vertices[i]);
+        }
+        int[] subTargets = new int[subOffsets[k]];
+        int[] subWeights = new int[subTargets.length];
+        String[] subNames = new String[k];
+        for (int i=0; i < k; i++) {
+            int v = vertices[i];
+            subNames[i] = names[v];
+            for (int e=offsets[v], f=subOffsets[i]; e < offsets[v+1]; e++, f++) {
+                int t = position[targets[e]];
+                if (t < 0 || t >= k || vertices[t] != targets[e]) {
+                    throw new IllegalArgumentException("arc from " + names[v] + " to " +
+                            names[targets[e]] + " leaves the subgraph");
+                }
+                subTargets[f] = t;
+                subWeights[f] = weights[e];
+            }
+        }
+        return new CompactGraph(subOffsets, subTargets, subWeights, subNames);
+    }
+
+    /**
+     * Returns an adjacency linked lists graph with the same vertices and edges. Every
+     * neighbor list is in the same order as the arcs of its vertex here.
+     *
+     * @return New graph
+     */
+    public Graph toGraph() {
+        Vertex[] vertices = getVertices();
+        for (int v=0; v < vertices.length; v++) {
+            for (int e=offsets[v+1]-1; e >= offsets[v]; e--) {
+                Vertex.Neighbor nbr = new Vertex.Neighbor(vertices[targets[e]], weights[e]);
+                nbr.next = vertices[v].neighbors;
+                vertices[v].neighbors = nbr;
+            }
+        }
+        return new Graph(vertices);
+    }
+
+    /**
+     * Reads the whitespace separated tokens of a text file, keeping track of the line number
+     */
+    private static class Tokens {
+        Reader in;
+        int line = 1;
+        StringBuilder sb = new StringBuilder();
+
+        Tokens(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Returns the next token, or null at the end of the input
+         */
+        String next()
+        throws IOException {
+            int c = in.read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                if (c == '\n') {
+                    line++;
+                }
+                c = in.read();
+            }
+            if (c == -1) {
+                return null;
+            }
+            sb.setLength(0);
+            while (c != -1 && !Character.isWhitespace(c)) {
+                sb.append((char)c);
+                c = in.read();
+            }
+            if (c == '\n') {
+                line++;
+            }
+            return sb.toString();
+        }
+
+        void close()
+        throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package structures;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Disjoint sets (union-find) over the integers 0 to size()-1 that any number of threads
+ * can find and unite at the same time, without locks. Parent links change only by
+ * compare-and-set. Find halves paths as it goes, and union hangs the root with the
+ * smaller number under the other one, so links always point to greater numbers and
+ * no cycle can form however the threads interleave.
+ */
+public class ConcurrentDisjointSet {
+
+    /**
+     * Parent of every element; a root is its own parent
+     */
+    private final AtomicIntegerArray parent;
+
+    /**
+     * Constructs a structure with the elements 0 to n-1, each in a set of its own
+     *
+     * @param n Number of elements
+     * @throws IllegalArgumentException If n is negative
+     */
+    public ConcurrentDisjointSet(int n)
+    throws IllegalArgumentException {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative size " + n);
+        }
+        parent = new AtomicIntegerArray(n);
+        for (int i=0; i < n; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    /**
+     * Finds the representative of the set that holds an element. The representative of
+     * a set can change while other threads unite it with another set.
+     *
+     * @param x Element
+     * @return Representative element of its set, at the time it was reached
+     * @throws IndexOutOfBoundsException If x is not an element
+     */
+    public int find(int x)
+    throws IndexOutOfBoundsException {
+        int p = parent.get(x);
+        while (p != x) {
+            int gp = parent.get(p);
+            if (gp != p) {
+                // another thread may have moved x already, which is just as good
+                parent.compareAndSet(x, p, gp);
+            }
+            x = p;
+            p = gp;
+        }
+        return x;
+    }
+
+    /**
+     * Merges the sets holding two elements
+     *
+     * @param x An element
+     * @param y Another element
+     * @return True if this call merged the sets, false if they were already one set
+     * @throws IndexOutOfBoundsException If x or y is not an element
+     */
+    public boolean union(int x, int y)
+    throws IndexOutOfBoundsException {
+        while (true) {
+            x = find(x);
+            y = find(y);
+            if (x == y) {
+                return false;
+            }
+            if (x > y) {
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+            // fails if x stopped being a root since it was found, in which case try again
+            if (parent.compareAndSet(x, x, y)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tells if two elements are in the same set. The answer is exact only if no union
+     * runs at the same time.
+     *
+     * @param x An element
+     * @param y Another element
+     * @return True if they are in the same set, false otherwise
+     * @throws IndexOutOfBoundsException If x or y is not an element
+     */
+    public boolean connected(int x, int y)
+    throws IndexOutOfBoundsException {
+        while (true) {
+            x = find(x);
+            y = find(y);
+            if (x == y) {
+                return true;
+            }
+            // x still a root means nothing joined the two sets in between
+            if (parent.get(x) == x) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements
+     *
+     * @return Number of elements
+     */
+    public int size() {
+        return parent.length();
+    }
+}
@@ -0,0 +1,164 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * Disjoint sets (union-find) over the integers 0 to size()-1, typically vertex ids.
+ * Find uses path halving and union goes by rank, so any sequence of m operations on
+ * n elements runs in O(m a(n)) time, where a is the inverse Ackermann function - in
+ * practice, constant time per operation. More elements can be added at any time.
+ */
+public class DisjointSet {
+
+    /**
+     * Parent of every element; a root is its own parent
+     */
+    private int[] parent;
+
+    /**
+     * Upper bound on the height of the tree under every root
+     */
+    private byte[] rank;
+
+    /**
+     * Number of elements
+     */
+    private int size;
+
+    /**
+     * Number of sets
+     */
+    private int count;
+
+    /**
+     * Constructs an empty structure
+     */
+    public DisjointSet() {
+        this(0);
+    }
+
+    /**
+     * Constructs a structure with the elements 0 to n-1, each in a set of its own
+     *
+     * @param n Number of elements
+     * @throws IllegalArgumentException If n is negative
+     */
+    public DisjointSet(int n)
+    throws IllegalArgumentException {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative size " + n);
+        }
+        parent = new int[Math.max(n, 8)];
+        rank = new byte[parent.length];
+        grow(n);
+    }
+
+    /**
+     * Adds elements, each in a set of its own, until there are at least n of them
+     *
+     * @param n Number of elements wanted
+     */
+    public void grow(int n) {
+        if (n <= size) {
+            return;
+        }
+        if (n > parent.length) {
+            int cap = Math.max(n, parent.length + (parent.length >> 1));
+            parent = Arrays.copyOf(parent, cap);
+            rank = Arrays.copyOf(rank, cap);
+        }
+        for (int i=size; i < n; i++) {
+            parent[i] = i;
+        }
+        count += n - size;
+        size = n;
+    }
+
+    /**
+     * Adds one element in a set of its own
+     *
+     * @return The new element
+     */
+    public int add() {
+        grow(size+1);
+        return size-1;
+    }
+
+    /**
+     * Finds the representative of the set that holds an element. Every other node on the
+     * way up is pointed at its grandparent, which roughly halves the path for next time.
+     *
+     * @param x Element
+     * @return Representative element of its set
+     * @throws IndexOutOfBoundsException If x is not an element
+     */
+    public int find(int x)
+    throws IndexOutOfBoundsException {
+        if (x < 0 || x >= size) {
+            throw new IndexOutOfBoundsException("no element " + x);
+        }
+        int[] p = parent;
+        while (p[x] != x) {
+            p[x] = p[p[x]];
+            x = p[x];
+        }
+        return x;
+    }
+
+    /**
+     * Merges the sets holding two elements, hanging the lower ranked root under the other
+     *
+     * @param x An element
+     * @param y Another element
+     * @return True if the sets were merged, false if the elements were already in one set
+     * @throws IndexOutOfBoundsException If x or y is not an element
+     */
+    public boolean union(int x, int y)
+    throws IndexOutOfBoundsException {
+        int rx = find(x), ry = find(y);
+        if (rx == ry) {
+            return false;
+        }
+        if (rank[rx] < rank[ry]) {
+            parent[rx] = ry;
+        } else if (rank[rx] > rank[ry]) {
+            parent[ry] = rx;
+        } else {
+            parent[ry] = rx;
+            rank[rx]++;
+        }
+        count--;
+        return true;
+    }
+
+    /**
+     * Tells if two elements are in the same set
+     *
+     * @param x An element
+     * @param y Another element
+     * @return True if they are in the same set, false otherwise
+     * @throws IndexOutOfBoundsException If x or y is not an element
+     */
+    public boolean connected(int x, int y)
+    throws IndexOutOfBoundsException {
+        return find(x) == find(y);
+    }
+
+    /**
+     * Returns the number of elements
+     *
+     * @return Number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of sets
+     *
+     * @return Number of sets
+     */
+    public int count() {
+        return count;
+    }
+}
@@ -33,7 +33,7 @@ public class Graph {
     	vertmap = new HashMap<String,Integer>(vertices.length,2f);
     	// add all vertices
     	for (int v=0; v < vertices.length; v++) {
-    		vertices[v] = new Vertex(sc.next());
+    		vertices[v] = new Vertex(sc.next(), v);
     		vertmap.put(vertices[v].name, v);
     	}
     	
@@ -54,6 +54,19 @@ public class Graph {
     	}
     }
     
+    /**
+     * Constructs a graph out of vertices whose neighbor lists are already filled in.
+     * 
+     * @param vertices Vertices, indexed by their ids.
+     */
+    Graph(Vertex[] vertices) {
+    	this.vertices = vertices;
+    	vertmap = new HashMap<String,Integer>(vertices.length,2f);
+    	for (int v=0; v < vertices.length; v++) {
+    		vertmap.put(vertices[v].name, v);
+    	}
+    }
+    
     /**
      * Prints this graph
      */
@@ -0,0 +1,684 @@
+package structures;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads graphs fast, either from the text format of Graph or from a binary format.
+ * <p>
+ * A text file is read in two parts. The vertex count and names are read in order, into
+ * a hash table keyed by the bytes of every name, so no String is made per edge. The edges
+ * are then split into chunks at line breaks, and the chunks are memory-mapped and parsed
+ * in parallel, with integers parsed by hand. This needs every edge on a line of its own,
+ * as Graph.print writes them.
+ * <p>
+ * A binary file holds the arrays of a CompactGraph as they are in memory, little-endian:
+ * the int MAGIC, the int VERSION, the ints n (vertices), arc count and name bytes, then
+ * offsets (n+1 ints), targets and weights (an int per arc), the end of every name in the
+ * name bytes (n ints), and the names in UTF-8. It loads with bulk copies only, at the
+ * speed of the disk.
+ */
+public class GraphLoader {
+
+    /**
+     * First 4 bytes of a binary graph file ("MSTG")
+     */
+    public static final int MAGIC = 0x4D535447;
+
+    /**
+     * Version of the binary format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Largest chunk of edges parsed by one task
+     */
+    static final int CHUNK = 1 << 26;
+
+    /**
+     * Bytes read or written at a time by the binary format
+     */
+    static final int BUFFER = 1 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int threads;
+
+    /**
+     * Initializes this loader to use as many threads as there are processors
+     */
+    public GraphLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes this loader to use the given number of threads
+     *
+     * @param threads Number of threads, at least 1
+     * @throws IllegalArgumentException If threads is less than 1
+     */
+    public GraphLoader(int threads)
+    throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Loads a graph in the text or the binary format, whichever the file is in
+     *
+     * @param file Name of the file
+     * @return Graph
+     * @throws IOException If the file can't be read, or is in neither format
+     */
+    public CompactGraph loadCompact(String file)
+    throws IOException {
+        return isBinary(file) ? loadBinary(file) : loadText(file);
+    }
+
+    /**
+     * Loads a graph in the text or the binary format, as an adjacency linked lists graph
+     *
+     * @param file Name of the file
+     * @return Graph
+     * @throws IOException If the file can't be read, or is in neither format
+     */
+    public Graph load(String file)
+    throws IOException {
+        return loadCompact(file).toGraph();
+    }
+
+    /**
+     * Tells if a file starts with the magic number of the binary format
+     */
+    private static boolean isBinary(String file)
+    throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < 4) {
+                return false;
+            }
+            ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            raf.getChannel().read(b, 0);
+            return b.getInt(0) == MAGIC;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Vertex names, in a hash table keyed by their bytes
+     */
+    static class NameTable {
+        byte[][] names;
+        int[] slots;
+        int mask;
+
+        NameTable(int n) {
+            names = new byte[n][];
+            int cap = Integer.highestOneBit(Math.max(2 * n, 2) - 1) << 1;
+            slots = new int[cap];
+            Arrays.fill(slots, -1);
+            mask = cap - 1;
+        }
+
+        static int hash(ByteBuffer buf, int start, int end) {
+            int h = 0;
+            for (int i=start; i < end; i++) {
+                h = 31 * h + buf.get(i);
+            }
+            return h ^ (h >>> 16);
+        }
+
+        static int hash(byte[] name) {
+            return hash(ByteBuffer.wrap(name), 0, name.length);
+        }
+
+        /**
+         * Adds the name of vertex v, unless some vertex has it already
+         *
+         * @return False if the name is already taken
+         */
+        boolean add(int v, byte[] name) {
+            names[v] = name;
+            int i = hash(name) & mask;
+            while (slots[i] >= 0) {
+                if (Arrays.equals(names[slots[i]], name)) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            slots[i] = v;
+            return true;
+        }
+
+        /**
+         * Finds the vertex whose name is in buf[start..end-1]
+         *
+         * @return Vertex number, or -1 if there is none
+         */
+        int find(ByteBuffer buf, int start, int end) {
+            int i = hash(buf, start, end) & mask;
+            while (slots[i] >= 0) {
+                byte[] name = names[slots[i]];
+                if (name.length == end - start) {
+                    int k = 0;
+                    while (k < name.length && name[k] == buf.get(start + k)) {
+                        k++;
+                    }
+                    if (k == name.length) {
+                        return slots[i];
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    /**
+     * Reads the vertex count and names at the start of a text file
+     */
+    private static class Header {
+        NameTable table;
+        long end;
+        long pos;
+        InputStream in;
+        byte[] token = new byte[64];
+        int length;
+
+        /**
+         * Reads the next token into token[0..length-1]
+         *
+         * @return False at the end of the file
+         */
+        boolean next()
+        throws IOException {
+            int c;
+            do {
+                c = in.read();
+                pos++;
+            } while (c != -1 && isSpace(c));
+            if (c == -1) {
+                return false;
+            }
+            length = 0;
+            while (c != -1 && !isSpace(c)) {
+                if (length == token.length) {
+                    token = Arrays.copyOf(token, length * 2);
+                }
+                token[length++] = (byte)c;
+                c = in.read();
+                pos++;
+            }
+            // pos is now just past the byte that ended the token
+            if (c == -1) {
+                pos--;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Loads a graph in the text format of Graph
+     *
+     * @param file Name of the file
+     * @return Graph
+     * @throws IOException If the file can't be read or is not a graph description
+     */
+    public CompactGraph loadText(String file)
+    throws IOException {
+        Header h = new Header();
+        h.in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        String[] names;
+        try {
+            int n = -1;
+            if (h.next()) {
+                try {
+                    n = Integer.parseInt(new String(h.token, 0, h.length, UTF8));
+                } catch (NumberFormatException e) {
+                }
+            }
+            if (n < 0) {
+                throw new IOException(file + ": expected the number of vertices");
+            }
+            h.table = new NameTable(n);
+            names = new String[n];
+            for (int v=0; v < n; v++) {
+                if (!h.next()) {
+                    throw new IOException(file + ": expected " + n + " vertex names");
+                }
+                byte[] name = Arrays.copyOf(h.token, h.length);
+                if (!h.table.add(v, name)) {
+                    throw new IOException(file + ": vertex name " + new String(name, UTF8) + " is repeated");
+                }
+                names[v] = new String(name, UTF8);
+            }
+            h.end = h.pos;
+        } finally {
+            h.in.close();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ArrayList<long[]> chunks = split(channel, h.end);
+            ArrayList<Callable<Edges>> tasks = new ArrayList<Callable<Edges>>();
+            for (final long[] chunk: chunks) {
+                final FileChannel ch = channel;
+                final NameTable table = h.table;
+                final String name = file;
+                tasks.add(new Callable<Edges>() {
+                    public Edges call()
+                    throws IOException {
+                        return parse(name, ch, chunk[0], chunk[1], table);
+                    }
+                });
+            }
+            ArrayList<Edges> parts = runAll(tasks);
+            return build(names, parts);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Splits the bytes from start to the end of the file into chunks of at most about
+     * CHUNK bytes, at least one per thread if there is enough, each ending at a line break
+     *
+     * @return Start and end of every chunk
+     */
+    private ArrayList<long[]> split(FileChannel channel, long start)
+    throws IOException {
+        long length = channel.size();
+        long total = Math.max(length - start, 0);
+        long size = Math.max(Math.min(CHUNK, total / (threads * 4L) + 1), 1 << 16);
+        ArrayList<long[]> chunks = new ArrayList<long[]>();
+        ByteBuffer b = ByteBuffer.allocate(1 << 12);
+        long pos = start;
+        while (pos < length) {
+            long end = Math.min(pos + size, length);
+            // move the end just past the next line break
+            while (end < length) {
+                b.clear();
+                int read = channel.read(b, end);
+                int i = 0;
+                while (i < read && b.get(i) != '\n') {
+                    i++;
+                }
+                end += i;
+                if (i < read) {
+                    end++;
+                    break;
+                }
+            }
+            chunks.add(new long[] { pos, end });
+            pos = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Edges parsed from one chunk
+     */
+    static class Edges {
+        int[] from = new int[1 << 10], to = new int[1 << 10], weight = new int[1 << 10];
+        int count;
+
+        void add(int v1, int v2, int w) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+                weight = Arrays.copyOf(weight, count * 2);
+            }
+            from[count] = v1;
+            to[count] = v2;
+            weight[count] = w;
+            count++;
+        }
+    }
+
+    /**
+     * Parses the edges in bytes start to end-1 of a file
+     */
+    static Edges parse(String file, FileChannel channel, long start, long end, NameTable table)
+    throws IOException {
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buf.limit();
+        Edges edges = new Edges();
+        int i = 0;
+        while (true) {
+            while (i < limit && isSpace(buf.get(i))) {
+                i++;
+            }
+            if (i == limit) {
+                break;
+            }
+            int v1 = 0, v2 = 0;
+            for (int k=0; k < 2; k++) {
+                int s = i;
+                while (i < limit && !isSpace(buf.get(i))) {
+                    i++;
+                }
+                int v = table.find(buf, s, i);
+                if (v < 0) {
+                    throw new IOException(file + ": byte " + (start + s) + ": unknown vertex " + text(buf, s, i));
+                }
+                if (k == 0) {
+                    v1 = v;
+                } else {
+                    v2 = v;
+                }
+                while (i < limit && isSpace(buf.get(i)) && buf.get(i) != '\n') {
+                    i++;
+                }
+                if (i == limit || buf.get(i) == '\n') {
+                    throw new IOException(file + ": byte " + (start + i) + ": edge is not on one line");
+                }
+            }
+            int s = i;
+            boolean negative = buf.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            long w = 0;
+            int digits = 0;
+            while (i < limit) {
+                int c = buf.get(i) - '0';
+                if (c < 0 || c > 9) {
+                    break;
+                }
+                w = w * 10 + c;
+                if (w > Integer.MAX_VALUE + 1L) {
+                    break;
+                }
+                digits++;
+                i++;
+            }
+            if (negative) {
+                w = -w;
+            }
+            if (digits == 0 || (i < limit && !isSpace(buf.get(i))) || w > Integer.MAX_VALUE || w < Integer.MIN_VALUE) {
+                throw new IOException(file + ": byte " + (start + s) + ": expected an edge weight");
+            }
+            edges.add(v1, v2, (int)w);
+        }
+        return edges;
+    }
+
+    private static String text(ByteBuffer buf, int start, int end) {
+        byte[] b = new byte[end - start];
+        for (int i=0; i < b.length; i++) {
+            b[i] = buf.get(start + i);
+        }
+        return new String(b, UTF8);
+    }
+
+    /**
+     * Runs tasks on this loader's threads
+     *
+     * @return Results, in the order of the tasks
+     */
+    private <T> ArrayList<T> runAll(ArrayList<Callable<T>> tasks)
+    throws IOException {
+        ArrayList<T> results = new ArrayList<T>(tasks.size());
+        if (threads == 1 || tasks.size() <= 1) {
+            for (Callable<T> task: tasks) {
+                try {
+                    results.add(task.call());
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            for (Future<T> f: pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Builds the CSR arrays out of the edges of all chunks, in the order of the file, so
+     * the arcs come out the same as from the CompactGraph constructor
+     */
+    private static CompactGraph build(String[] names, ArrayList<Edges> parts) {
+        int n = names.length;
+        int[] offsets = new int[n+1];
+        for (Edges edges: parts) {
+            for (int i=0; i < edges.count; i++) {
+                offsets[edges.from[i]+1]++;
+                offsets[edges.to[i]+1]++;
+            }
+        }
+        for (int v=0; v < n; v++) {
+            offsets[v+1] += offsets[v];
+        }
+        int[] targets = new int[offsets[n]], weights = new int[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (Edges edges: parts) {
+            for (int i=0; i < edges.count; i++) {
+                int v1 = edges.from[i], v2 = edges.to[i], w = edges.weight[i];
+                targets[next[v1]] = v2;
+                weights[next[v1]++] = w;
+                targets[next[v2]] = v1;
+                weights[next[v2]++] = w;
+            }
+        }
+        return new CompactGraph(offsets, targets, weights, names);
+    }
+
+    /**
+     * Writes a graph in the binary format
+     *
+     * @param graph Graph
+     * @param file File to write
+     * @throws IOException If the file can't be written
+     */
+    public static void writeBinary(CompactGraph graph, File file)
+    throws IOException {
+        int n = graph.vertexCount();
+        byte[][] names = new byte[n][];
+        int[] nameEnds = new int[n];
+        long total = 0;
+        for (int v=0; v < n; v++) {
+            names[v] = graph.name(v).getBytes(UTF8);
+            total += names[v].length;
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("vertex names too long for the binary format");
+            }
+            nameEnds[v] = (int)total;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer b = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(graph.arcCount()).putInt((int)total);
+            writeInts(channel, b, graph.offsets);
+            writeInts(channel, b, graph.targets);
+            writeInts(channel, b, graph.weights);
+            writeInts(channel, b, nameEnds);
+            for (byte[] name: names) {
+                int off = 0;
+                while (off < name.length) {
+                    if (!b.hasRemaining()) {
+                        flush(channel, b);
+                    }
+                    int len = Math.min(b.remaining(), name.length - off);
+                    b.put(name, off, len);
+                    off += len;
+                }
+            }
+            flush(channel, b);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer b, int[] a)
+    throws IOException {
+        int off = 0;
+        while (off < a.length) {
+            if (b.remaining() < 4) {
+                flush(channel, b);
+            }
+            int len = Math.min(b.remaining() / 4, a.length - off);
+            b.asIntBuffer().put(a, off, len);
+            b.position(b.position() + len * 4);
+            off += len;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer b)
+    throws IOException {
+        b.flip();
+        while (b.hasRemaining()) {
+            channel.write(b);
+        }
+        b.clear();
+    }
+
+    /**
+     * Loads a graph in the binary format
+     *
+     * @param file Name of the file
+     * @return Graph
+     * @throws IOException If the file can't be read or is not in the binary format
+     */
+    public static CompactGraph loadBinary(String file)
+    throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer b = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            b.limit(20);
+            fill(channel, b);
+            if (b.getInt() != MAGIC) {
+                throw new IOException(file + ": not a binary graph file");
+            }
+            if (b.getInt() != VERSION) {
+                throw new IOException(file + ": unknown binary graph version");
+            }
+            int n = b.getInt(), arcs = b.getInt(), total = b.getInt();
+            if (n < 0 || arcs < 0 || total < 0
+                    || channel.size() != 20 + 4L * (n + 1 + 2L * arcs + n) + total) {
+                throw new IOException(file + ": bad header or wrong length");
+            }
+            b.clear().limit(0);
+            int[] offsets = readInts(channel, b, n+1);
+            int[] targets = readInts(channel, b, arcs);
+            int[] weights = readInts(channel, b, arcs);
+            int[] nameEnds = readInts(channel, b, n);
+            byte[] blob = new byte[total];
+            int off = 0;
+            while (off < total) {
+                if (!b.hasRemaining()) {
+                    b.clear();
+                    b.limit(Math.min(b.capacity(), total - off));
+                    fill(channel, b);
+                }
+                int len = Math.min(b.remaining(), total - off);
+                b.get(blob, off, len);
+                off += len;
+            }
+            String[] names = new String[n];
+            int start = 0;
+            for (int v=0; v < n; v++) {
+                if (nameEnds[v] < start || nameEnds[v] > total) {
+                    throw new IOException(file + ": bad name table");
+                }
+                names[v] = new String(blob, start, nameEnds[v] - start, UTF8);
+                start = nameEnds[v];
+            }
+            if (offsets[0] != 0 || offsets[n] != arcs) {
+                throw new IOException(file + ": bad offsets");
+            }
+            for (int v=0; v < n; v++) {
+                if (offsets[v+1] < offsets[v]) {
+                    throw new IOException(file + ": offsets of vertex " + v + " decrease");
+                }
+            }
+            for (int e=0; e < arcs; e++) {
+                if (targets[e] < 0 || targets[e] >= n) {
+                    throw new IOException(file + ": arc " + e + " goes to no vertex");
+                }
+            }
+            return new CompactGraph(offsets, targets, weights, names);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full up to its limit
+     */
+    private static void fill(FileChannel channel, ByteBuffer b)
+    throws IOException {
+        while (b.hasRemaining()) {
+            if (channel.read(b) < 0) {
+                throw new EOFException();
+            }
+        }
+        b.flip();
+    }
+
+    private static int[] readInts(FileChannel channel, ByteBuffer b, int count)
+    throws IOException {
+        int[] a = new int[count];
+        int off = 0;
+        while (off < count) {
+            if (b.remaining() < 4) {
+                b.compact();
+                long left = 4L * (count - off);
+                if (b.position() + left < b.capacity()) {
+                    b.limit((int)(b.position() + left));
+                }
+                fill(channel, b);
+            }
+            int len = Math.min(b.remaining() / 4, count - off);
+            b.asIntBuffer().get(a, off, len);
+            b.position(b.position() + len * 4);
+            off += len;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,356 @@
+package structures;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Implements a MIN-heap of int ids, from 0 to capacity-1, ordered by long keys, all kept in
+ * flat arrays so nothing is allocated per item. Every node has d children (4 by default),
+ * which makes the heap shallower than a binary heap and keeps the children of a node in
+ * one cache line. A position index lets decreaseKey and remove find an id in constant
+ * time, so both run in O(log n). An int key simply widens to a long.
+ */
+public class IndexedMinHeap {
+
+    /**
+     * Ids in heap order
+     */
+    private int[] heap;
+
+    /**
+     * Position of every id in heap, or -1 if the id is not in the heap
+     */
+    private int[] pos;
+
+    /**
+     * Key of every id in the heap
+     */
+    private long[] keys;
+
+    /**
+     * Number of children of every node
+     */
+    private final int arity;
+
+    /**
+     * Number of ids in the heap
+     */
+    private int size;
+
+    /**
+     * Constructs a new, empty 4-ary heap for the ids 0 to capacity-1
+     *
+     * @param capacity Number of ids
+     * @throws IllegalArgumentException If capacity is negative
+     */
+    public IndexedMinHeap(int capacity)
+    throws IllegalArgumentException {
+        this(capacity, 4);
+    }
+
+    /**
+     * Constructs a new, empty heap for the ids 0 to capacity-1
+     *
+     * @param capacity Number of ids
+     * @param arity Number of children of every node, at least 2
+     * @throws IllegalArgumentException If capacity is negative or arity is less than 2
+     */
+    public IndexedMinHeap(int capacity, int arity)
+    throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("negative capacity " + capacity);
+        }
+        if (arity < 2) {
+            throw new IllegalArgumentException("arity must be at least 2");
+        }
+        this.arity = arity;
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new long[capacity];
+        Arrays.fill(pos, -1);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of ids this heap can hold
+     *
+     * @return Capacity
+     */
+    public int capacity() {
+        return pos.length;
+    }
+
+    /**
+     * Returns the number of ids currently stored in the heap.
+     *
+     * @return Size of heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells if the heap is empty.
+     *
+     * @return <tt>true</tt> if no ids are in heap, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Tells if an id is in the heap
+     *
+     * @param id Id
+     * @return True if id is in the heap, false otherwise
+     * @throws IndexOutOfBoundsException If id is out of range
+     */
+    public boolean contains(int id)
+    throws IndexOutOfBoundsException {
+        return pos[check(id)] >= 0;
+    }
+
+    /**
+     * Returns the key of an id in the heap
+     *
+     * @param id Id
+     * @return Key of id
+     * @throws NoSuchElementException If id is not in the heap
+     */
+    public long key(int id)
+    throws NoSuchElementException {
+        if (pos[check(id)] < 0) {
+            throw new NoSuchElementException("no id " + id);
+        }
+        return keys[id];
+    }
+
+    /**
+     * Inserts an id into the heap.
+     *
+     * @param id Id to insert
+     * @param key Key of id
+     * @throws IllegalArgumentException If id is already in the heap
+     */
+    public void insert(int id, long key)
+    throws IllegalArgumentException {
+        if (pos[check(id)] >= 0) {
+            throw new IllegalArgumentException("id " + id + " is already in the heap");
+        }
+        keys[id] = key;
+        siftUp(id, size++);
+    }
+
+    /**
+     * Lowers the key of an id in the heap.
+     *
+     * @param id Id
+     * @param key New key, no greater than the current one
+     * @throws NoSuchElementException If id is not in the heap
+     * @throws IllegalArgumentException If key is greater than the current key of id
+     */
+    public void decreaseKey(int id, long key)
+    throws NoSuchElementException, IllegalArgumentException {
+        int k = pos[check(id)];
+        if (k < 0) {
+            throw new NoSuchElementException("no id " + id);
+        }
+        if (key > keys[id]) {
+            throw new IllegalArgumentException("key " + key + " is greater than " + keys[id]);
+        }
+        keys[id] = key;
+        siftUp(id, k);
+    }
+
+    /**
+     * Inserts an id, or lowers its key if it is in the heap with a greater key. This is
+     * the relax step of Prim's and Dijkstra's algorithms.
+     *
+     * @param id Id
+     * @param key Key
+     * @return True if the id was inserted or its key lowered, false if it was already in
+     *         the heap with a key no greater than the given one
+     */
+    public boolean offer(int id, long key) {
+        int k = pos[check(id)];
+        if (k >= 0 && keys[id] <= key) {
+            return false;
+        }
+        keys[id] = key;
+        siftUp(id, k < 0 ? size++ : k);
+        return true;
+    }
+
+    /**
+     * Returns (but does not remove) the id with the min key.
+     *
+     * @return Id at top of heap.
+     * @throws NoSuchElementException If heap is empty.
+     */
+    public int getMin()
+    throws NoSuchElementException {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return heap[0];
+    }
+
+    /**
+     * Returns the min key in the heap.
+     *
+     * @return Key of the id at top of heap.
+     * @throws NoSuchElementException If heap is empty.
+     */
+    public long getMinKey()
+    throws NoSuchElementException {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[heap[0]];
+    }
+
+    /**
+     * Removes and returns the id with the min key.
+     *
+     * @return Id (min) at top of heap.
+     * @throws NoSuchElementException If the heap is empty.
+     */
+    public int deleteMin()
+    throws NoSuchElementException {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int min = heap[0];
+        removeAt(0);
+        return min;
+    }
+
+    /**
+     * Removes an id from the heap.
+     *
+     * @param id Id to remove
+     * @return True if id was in the heap, false otherwise
+     */
+    public boolean remove(int id) {
+        int k = pos[check(id)];
+        if (k < 0) {
+            return false;
+        }
+        removeAt(k);
+        return true;
+    }
+
+    /**
+     * Empties the heap, in time proportional to its size
+     */
+    public void clear() {
+        for (int i=0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Replaces the contents of the heap with the given ids and keys, and builds the heap
+     * bottom-up in O(n) time.
+     *
+     * @param ids Ids, with no repeats
+     * @param keys Key of every id, at the same index as the id
+     * @param n Number of ids to take from the arrays
+     * @throws IllegalArgumentException If an id is repeated
+     */
+    public void heapify(int[] ids, long[] keys, int n)
+    throws IllegalArgumentException {
+        clear();
+        for (int i=0; i < n; i++) {
+            int id = ids[i];
+            if (pos[check(id)] >= 0) {
+                size = i;
+                clear();
+                throw new IllegalArgumentException("id " + id + " is repeated");
+            }
+            heap[i] = id;
+            pos[id] = i;
+            this.keys[id] = keys[i];
+        }
+        size = n;
+        // the last parent is the parent of the last id; with less than two ids there is none
+        for (int k=n > 1 ? (n-2)/arity : -1; k >= 0; k--) {
+            siftDown(heap[k], k);
+        }
+    }
+
+    private int check(int id)
+    throws IndexOutOfBoundsException {
+        if (id < 0 || id >= pos.length) {
+            throw new IndexOutOfBoundsException("id " + id + " out of range 0-" + (pos.length-1));
+        }
+        return id;
+    }
+
+    private void removeAt(int k) {
+        int id = heap[k];
+        pos[id] = -1;
+        size--;
+        if (k == size) {
+            return;
+        }
+        // fill the hole with the last id, which may have to go either way
+        int last = heap[size];
+        if (k > 0 && keys[last] < keys[heap[(k-1)/arity]]) {
+            siftUp(last, k);
+        } else {
+            siftDown(last, k);
+        }
+    }
+
+    /**
+     * Moves id up from position k, shifting its greater ancestors down into the hole
+     */
+    private void siftUp(int id, int k) {
+        long key = keys[id];
+        while (k > 0) {
+            int p = (k-1)/arity;
+            int parent = heap[p];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[k] = parent;
+            pos[parent] = k;
+            k = p;
+        }
+        heap[k] = id;
+        pos[id] = k;
+    }
+
+    /**
+     * Moves id down from position k, shifting its least children up into the hole
+     */
+    private void siftDown(int id, int k) {
+        long key = keys[id];
+        while (true) {
+            int first = k*arity + 1;
+            if (first >= size) {
+                break;
+            }
+            int end = Math.min(first + arity, size);
+            int min = first;
+            long minKey = keys[heap[first]];
+            for (int c=first+1; c < end; c++) {
+                long ck = keys[heap[c]];
+                if (ck < minKey) {
+                    min = c;
+                    minKey = ck;
+                }
+            }
+            if (minKey >= key) {
+                break;
+            }
+            heap[k] = heap[min];
+            pos[heap[k]] = k;
+            k = min;
+        }
+        heap[k] = id;
+        pos[id] = k;
+    }
+}
@@ -0,0 +1,207 @@
+package structures;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implements a MIN pairing heap: a heap-ordered tree of any shape, in which every node
+ * keeps its first child and its next sibling. Insert and merge just link two roots, in
+ * constant time, and deleteMin pairs up the children of the old root in two passes, in
+ * O(log n) amortized time. Unlike MinHeap, merging two heaps does not touch their items,
+ * which makes this the better arc store for trees that are merged over and over.
+ */
+public class PairingHeap<T extends Comparable<T>> implements Iterable<T> {
+
+    /**
+     * Inner class - a node of the heap
+     */
+    private static class Node<T> {
+        T item;
+        Node<T> child;
+        Node<T> sibling;
+
+        Node(T item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Root of the heap, holding the min item, or null if the heap is empty
+     */
+    private Node<T> root;
+
+    /**
+     * Number of items in the heap
+     */
+    private int size;
+
+    /**
+     * Constructs a new, empty heap
+     */
+    public PairingHeap() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Links two roots, with no siblings, so that the one with the greater item becomes the
+     * first child of the other
+     *
+     * @return The root of the linked tree
+     */
+    private Node<T> link(Node<T> a, Node<T> b) {
+        if (b.item.compareTo(a.item) < 0) {
+            Node<T> temp = a;
+            a = b;
+            b = temp;
+        }
+        b.sibling = a.child;
+        a.child = b;
+        return a;
+    }
+
+    /**
+     * Inserts an item into the heap.
+     *
+     * @param item Item to insert.
+     */
+    public void insert(T item) {
+        Node<T> node = new Node<T>(item);
+        root = root == null ? node : link(root, node);
+        size++;
+    }
+
+    /**
+     * Removes and returns the min item in the heap.
+     *
+     * @return Item (min) at top of heap.
+     * @throws NoSuchElementException If the heap is empty.
+     */
+    public T deleteMin()
+    throws NoSuchElementException {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        T minItem = root.item;
+
+        // first pass: link the children in pairs, left to right, stacking the results
+        Node<T> pairs = null;
+        Node<T> ptr = root.child;
+        while (ptr != null) {
+            Node<T> a = ptr, b = ptr.sibling;
+            if (b == null) {
+                a.sibling = pairs;
+                pairs = a;
+                break;
+            }
+            ptr = b.sibling;
+            a.sibling = null;
+            b.sibling = null;
+            Node<T> linked = link(a, b);
+            linked.sibling = pairs;
+            pairs = linked;
+        }
+
+        // second pass: link the pairs right to left, which is the order of the stack
+        Node<T> newRoot = null;
+        while (pairs != null) {
+            Node<T> next = pairs.sibling;
+            pairs.sibling = null;
+            newRoot = newRoot == null ? pairs : link(newRoot, pairs);
+            pairs = next;
+        }
+        root = newRoot;
+        size--;
+        return minItem;
+    }
+
+    /**
+     * Merges another heap into this one in constant time. All items of the other heap
+     * are moved to this one, so the other heap is empty afterwards.
+     *
+     * @param hp Heap whose elements will be merged into this heap.
+     */
+    public void merge(PairingHeap<T> hp) {
+        if (hp == this || hp.root == null) {
+            return;
+        }
+        root = root == null ? hp.root : link(root, hp.root);
+        size += hp.size;
+        hp.root = null;
+        hp.size = 0;
+    }
+
+    /**
+     * Returns (but does not remove) the min item in the heap.
+     *
+     * @return Item at top of heap.
+     * @throws NoSuchElementException If heap is empty.
+     */
+    public T getMin()
+    throws NoSuchElementException {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        return root.item;
+    }
+
+    /**
+     * Returns the number of items currently stored in the heap.
+     *
+     * @return Size of heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells if the heap is empty.
+     *
+     * @return <tt>true</tt> if no items are in heap, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Returns an iterator over the items of the heap, in no particular order
+     */
+    public Iterator<T> iterator() {
+        final ArrayDeque<Node<T>> stack = new ArrayDeque<Node<T>>();
+        if (root != null) {
+            stack.push(root);
+        }
+        return new Iterator<T>() {
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            public T next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<T> node = stack.pop();
+                if (node.sibling != null) {
+                    stack.push(node.sibling);
+                }
+                if (node.child != null) {
+                    stack.push(node.child);
+                }
+                return node.item;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public String toString() {
+        StringBuilder ret = new StringBuilder();
+        for (T item: this) {
+            ret.append("  ").append(item);
+        }
+        return ret.toString();
+    }
+}
@@ -44,6 +44,12 @@ public class Vertex {
      */
     public String name;
 
+    /**
+     * Index of this vertex in the vertices array of its graph, which lets algorithms keep
+     * per-vertex data in arrays (for instance, a DisjointSet) instead of hash maps.
+     */
+    public int id;
+
     /**
      * Adjacency linked list of all neighbors.
      */
@@ -64,21 +70,27 @@ public class Vertex {
      * no outgoing edges), and no parent vertex (i.e., it is its own partial
      * spanning tree).
      * @param name Name to give to this vertex.
+     * @param id Index of this vertex in the vertices array of its graph.
      */
-    Vertex(String name) {
+    Vertex(String name, int id) {
     	this.name = name;
+    	this.id = id;
     	neighbors = null;
     	parent = this;
     }
 
     /**
      * Finds and returns the vertex at the root of the partial spanning tree to
-     * which this vertex belongs.
+     * which this vertex belongs. On the way up, every other vertex is pointed at
+     * its grandparent (path halving), so later calls take fewer steps.
      * @return Root of partial tree.
      */
     public Vertex getRoot() {
-		Vertex v;
-		for (v = this ; v.parent != v ; v = v.parent);
+		Vertex v = this;
+		while (v.parent != v) {
+			v.parent = v.parent.parent;
+			v = v.parent;
+		}
 		return v;
     }
 